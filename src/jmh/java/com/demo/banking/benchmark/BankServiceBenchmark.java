@@ -0,0 +1,71 @@
+package com.demo.banking.benchmark;
+
+import com.demo.banking.BankingDemoAppApplication;
+import com.demo.banking.model.Currency;
+import com.demo.banking.model.Money;
+import com.demo.banking.service.BankService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deposit and withdraw through the transactional BankService against the in-memory H2 database.
+ * Clients are not monitored, so no message is published and no broker is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BankServiceBenchmark {
+    private static final int CLIENTS = 1_000;
+    private static final Money AMOUNT = Money.of("1.00");
+
+    private ConfigurableApplicationContext context;
+    private BankService bankService;
+    private String[] cnps;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(BankingDemoAppApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--banking.demo.enabled=false",
+                        "--spring.rabbitmq.listener.simple.auto-startup=false",
+                        "--logging.level.root=WARN");
+        bankService = context.getBean(BankService.class);
+
+        cnps = new String[CLIENTS];
+        Money initialBalance = Money.of("1000000000.00");
+        for (int i = 0; i < CLIENTS; i++) {
+            cnps[i] = String.valueOf(1_000_000_000_000L + i);
+            bankService.createAccounts(cnps[i]);
+            bankService.deposit(cnps[i], Currency.RON, initialBalance);
+            bankService.deposit(cnps[i], Currency.EUR, initialBalance);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void deposit() {
+        bankService.deposit(nextCnp(), Currency.RON, AMOUNT);
+    }
+
+    @Benchmark
+    public void withdraw() {
+        bankService.withdraw(nextCnp(), Currency.EUR, AMOUNT);
+    }
+
+    private String nextCnp() {
+        next = (next + 1) % CLIENTS;
+        return cnps[next];
+    }
+}
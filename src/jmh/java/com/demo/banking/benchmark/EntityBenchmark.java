@@ -0,0 +1,60 @@
+package com.demo.banking.benchmark;
+
+import com.demo.banking.model.Account;
+import com.demo.banking.model.Client;
+import com.demo.banking.model.Currency;
+import com.demo.banking.model.Money;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * equals and hashCode of the entities, used whenever they are kept in hash-based collections
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityBenchmark {
+    private Client client;
+    private Client sameClient;
+    private Account account;
+    private Account sameAccount;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        client = newClient();
+        sameClient = newClient();
+        account = client.getRonAccount();
+        sameAccount = sameClient.getRonAccount();
+    }
+
+    @Benchmark
+    public boolean clientEquals() {
+        return client.equals(sameClient);
+    }
+
+    @Benchmark
+    public int clientHashCode() {
+        return client.hashCode();
+    }
+
+    @Benchmark
+    public boolean accountEquals() {
+        return account.equals(sameAccount);
+    }
+
+    @Benchmark
+    public int accountHashCode() {
+        return account.hashCode();
+    }
+
+    private static Client newClient() {
+        return new Client("1234567890123",
+                new Account(1L, Currency.RON, Money.of("2500.00")),
+                new Account(2L, Currency.EUR, Money.of("1500.00")),
+                true);
+    }
+}
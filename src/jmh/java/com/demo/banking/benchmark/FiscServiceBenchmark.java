@@ -0,0 +1,67 @@
+package com.demo.banking.benchmark;
+
+import com.demo.banking.metrics.FiscMetrics;
+import com.demo.banking.model.BalanceChangeNotification;
+import com.demo.banking.model.Client;
+import com.demo.banking.model.Money;
+import com.demo.banking.service.BalanceAggregates;
+import com.demo.banking.service.FiscService;
+import com.demo.banking.service.NotificationClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notification handling on the FISC side, including the update of the cached balances.
+ * Console output is discarded so that the numbers reflect the cache update rather than the terminal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FiscServiceBenchmark {
+    private FiscService fiscService;
+    private BalanceChangeNotification monitoredNotification;
+    private BalanceChangeNotification ignoredNotification;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        fiscService = new FiscService(new FiscMetrics(new SimpleMeterRegistry()), new BalanceAggregates(10),
+                new NotificationClock());
+        Client client = new Client("1234567890123");
+        client.getRonAccount().setBalance(Money.of("2000.00"));
+        client.getEuroAccount().setBalance(Money.of("1500.00"));
+        client.setMonitored(true);
+        fiscService.startMonitoring(client);
+
+        client.getRonAccount().setBalance(Money.of("2500.00"));
+        monitoredNotification = new BalanceChangeNotification(client, true, false);
+
+        ignoredNotification = new BalanceChangeNotification(client, true, false);
+        ignoredNotification.setCnp("9999999999999");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void handleMonitored() {
+        fiscService.handleBalanceChangeNotification(monitoredNotification);
+    }
+
+    @Benchmark
+    public void handleIgnored() {
+        fiscService.handleBalanceChangeNotification(ignoredNotification);
+    }
+}
@@ -0,0 +1,53 @@
+package com.demo.banking.benchmark;
+
+import com.demo.banking.config.NotificationMessageConverter;
+import com.demo.banking.model.BalanceChangeNotification;
+import com.demo.banking.model.Client;
+import com.demo.banking.model.Money;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of balance change notifications with the converter configured in RabbitMQConfig,
+ * for each wire format
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageConverterBenchmark {
+    @Param({"JSON", "BINARY"})
+    private NotificationMessageConverter.WireFormat wireFormat;
+
+    private MessageConverter converter;
+    private BalanceChangeNotification notification;
+    private Message message;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        converter = new NotificationMessageConverter(wireFormat);
+
+        Client client = new Client("1234567890123");
+        client.getRonAccount().setBalance(Money.of("2500.00"));
+        client.getEuroAccount().setBalance(Money.of("1500.00"));
+        notification = new BalanceChangeNotification(client, true, false);
+        notification.setSequence(System.currentTimeMillis() << 20);
+        message = converter.toMessage(notification, new MessageProperties());
+    }
+
+    @Benchmark
+    public Message encode() {
+        return converter.toMessage(notification, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object decode() {
+        return converter.fromMessage(message);
+    }
+}
@@ -1,18 +1,22 @@
 package com.demo.banking;
 
 import com.demo.banking.model.Currency;
+import com.demo.banking.model.Money;
 import com.demo.banking.service.BankService;
+import com.demo.banking.service.ClientMutationGuard;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
-
 @Component
+@ConditionalOnProperty(name = "banking.demo.enabled", havingValue = "true", matchIfMissing = true)
 public class DemoRunner implements CommandLineRunner {
     private final BankService bankService;
+    private final ClientMutationGuard mutationGuard;
 
-    public DemoRunner(BankService bankService) {
+    public DemoRunner(BankService bankService, ClientMutationGuard mutationGuard) {
         this.bankService = bankService;
+        this.mutationGuard = mutationGuard;
     }
 
     @Override
@@ -26,8 +30,8 @@ public class DemoRunner implements CommandLineRunner {
 
         // Initial deposit to meet minimum balance requirements
         System.out.println("\n2. Initial deposit to meet minimum balance requirements");
-        bankService.deposit(cnp, Currency.RON, new BigDecimal("2000.00"));
-        bankService.deposit(cnp, Currency.EUR, new BigDecimal("2000.00"));
+        bankService.deposit(cnp, Currency.RON, Money.of("2000.00"));
+        bankService.deposit(cnp, Currency.EUR, Money.of("2000.00"));
 
         // Check account info
         System.out.println("\n3. Account information after initial deposit:");
@@ -35,14 +39,14 @@ public class DemoRunner implements CommandLineRunner {
 
         // Start monitoring by FISC
         System.out.println("\n4. FISC starts monitoring the client");
-        bankService.startMonitoring(cnp);
+        mutationGuard.run(cnp, () -> bankService.startMonitoring(cnp));
 
         // Make some transactions
         System.out.println("\n5. Client makes a deposit of 500 RON");
-        bankService.deposit(cnp, Currency.RON, new BigDecimal("500.00"));
+        bankService.deposit(cnp, Currency.RON, Money.of("500.00"));
 
         System.out.println("\n6. Client withdraws 300 EUR");
-        bankService.withdraw(cnp, Currency.EUR, new BigDecimal("300.00"));
+        bankService.withdraw(cnp, Currency.EUR, Money.of("300.00"));
 
         // Check account info again
         System.out.println("\n7. Account information after transactions:");
@@ -50,11 +54,11 @@ public class DemoRunner implements CommandLineRunner {
 
         // Stop monitoring
         System.out.println("\n8. FISC stops monitoring the client");
-        bankService.stopMonitoring(cnp);
+        mutationGuard.run(cnp, () -> bankService.stopMonitoring(cnp));
 
         // Make another transaction without monitoring
         System.out.println("\n9. Client makes another deposit (not monitored)");
-        bankService.deposit(cnp, Currency.RON, new BigDecimal("1000.00"));
+        bankService.deposit(cnp, Currency.RON, Money.of("1000.00"));
 
         // Try to close accounts with non-zero balance
         System.out.println("\n10. Attempt to close accounts with non-zero balance:");
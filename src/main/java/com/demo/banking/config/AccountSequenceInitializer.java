@@ -0,0 +1,47 @@
+package com.demo.banking.config;
+
+import com.demo.banking.model.Account;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the account id sequence past the ids already in the accounts table. Databases whose accounts were
+ * created with identity columns get a new sequence from {@code ddl-auto=update} that starts at 1, and would
+ * otherwise hand out ids that are already taken.
+ * <p>
+ * Runs once the entity manager factory has updated the schema and before anything creates accounts.
+ */
+@Component
+public class AccountSequenceInitializer {
+    private final JdbcTemplate jdbcTemplate;
+    private final String nextValueQuery;
+
+    public AccountSequenceInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nextValueQuery = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices()
+                .getDialect().getSequenceSupport().getSequenceNextValString(Account.ID_SEQUENCE);
+    }
+
+    @PostConstruct
+    public void seedAboveExistingIds() {
+        Long maxId = jdbcTemplate.queryForObject("select max(id) from accounts", Long.class);
+        if (maxId == null) {
+            return;
+        }
+
+        // The pooled optimizer hands out the ids below each value it reads, so the next block starts just
+        // above this value and is free when the value is not below the largest id
+        Long next = jdbcTemplate.queryForObject(nextValueQuery, Long.class);
+        if (next != null && next >= maxId) {
+            return;
+        }
+
+        long restartWith = maxId + Account.ID_ALLOCATION_SIZE;
+        jdbcTemplate.execute("alter sequence " + Account.ID_SEQUENCE + " restart with " + restartWith);
+        System.out.println("BANK: Moved " + Account.ID_SEQUENCE + " from " + next + " to " + restartWith
+                + ", past the largest account id " + maxId);
+    }
+}
@@ -0,0 +1,37 @@
+package com.demo.banking.config;
+
+import com.demo.banking.service.AdmissionControl;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Runs client mutations through the rate limits of {@link AdmissionControl} before they reach the controller, so
+ * a rejected request costs no transaction, lock or database access. Rejections are answered by the controller's
+ * exception handlers with 429 and a {@code Retry-After} header. Reads are not limited. The notification backlog
+ * is checked later, only for changes of monitored clients.
+ */
+@Component
+public class AdmissionInterceptor implements HandlerInterceptor {
+    private final AdmissionControl admissionControl;
+
+    public AdmissionInterceptor(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!HttpMethod.GET.matches(request.getMethod())) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> variables =
+                    (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+            admissionControl.admit(variables == null ? null : variables.get("cnp"));
+        }
+        return true;
+    }
+}
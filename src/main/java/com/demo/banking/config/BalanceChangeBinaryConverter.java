@@ -0,0 +1,143 @@
+package com.demo.banking.config;
+
+import com.demo.banking.model.BalanceChangeNotification;
+import com.demo.banking.model.Money;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-layout binary encoding of {@link BalanceChangeNotification}: 44 bytes for a 13 digit CNP, against about
+ * 160 bytes of JSON plus the {@code __TypeId__} header, and no reflection on either side.
+ * <pre>
+ * version    1 byte   currently 1
+ * flags      1 byte   bit 0: RON changed, bit 1: EUR changed
+ * cnp        1 byte digit count, then the digits packed two per byte (high nibble first, 0xF pad)
+ * ron        1 byte scale, 8 bytes unscaled value (written as minor units with scale 2)
+ * euro       1 byte scale, 8 bytes unscaled value
+ * sequence   8 bytes
+ * sentAt     8 bytes
+ * </pre>
+ * Only notifications with a numeric CNP and both balances can be encoded, see {@link #canEncode(Object)}.
+ */
+public class BalanceChangeBinaryConverter implements MessageConverter {
+    public static final String CONTENT_TYPE = "application/x-balance-change";
+
+    private static final byte VERSION = 1;
+    private static final int RON_CHANGED = 1;
+    private static final int EURO_CHANGED = 1 << 1;
+    private static final int MAX_CNP_DIGITS = 255;
+    // Everything except the packed CNP digits
+    private static final int FIXED_SIZE = 3 + 9 + 9 + 8 + 8;
+
+    public boolean canEncode(Object object) {
+        if (!(object instanceof BalanceChangeNotification notification)) {
+            return false;
+        }
+        return isNumeric(notification.getCnp())
+                && notification.getRonBalance() != null
+                && notification.getEuroBalance() != null;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        if (!canEncode(object)) {
+            throw new MessageConversionException("Cannot encode " + object + " as " + CONTENT_TYPE);
+        }
+        byte[] body = encode((BalanceChangeNotification) object);
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        try {
+            return decode(message.getBody());
+        } catch (BufferUnderflowException e) {
+            throw new MessageConversionException("Truncated " + CONTENT_TYPE + " message", e);
+        }
+    }
+
+    private byte[] encode(BalanceChangeNotification notification) {
+        String cnp = notification.getCnp();
+        int digits = cnp.length();
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE + (digits + 1) / 2);
+
+        buffer.put(VERSION);
+        buffer.put((byte) ((notification.isRonChanged() ? RON_CHANGED : 0)
+                | (notification.isEuroChanged() ? EURO_CHANGED : 0)));
+
+        buffer.put((byte) digits);
+        for (int i = 0; i < digits; i += 2) {
+            int high = cnp.charAt(i) - '0';
+            int low = i + 1 < digits ? cnp.charAt(i + 1) - '0' : 0xF;
+            buffer.put((byte) (high << 4 | low));
+        }
+
+        putMoney(buffer, notification.getRonBalance());
+        putMoney(buffer, notification.getEuroBalance());
+        buffer.putLong(notification.getSequence());
+        buffer.putLong(notification.getSentAt());
+        return buffer.array();
+    }
+
+    private BalanceChangeNotification decode(byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new MessageConversionException("Unsupported " + CONTENT_TYPE + " version: " + version);
+        }
+
+        BalanceChangeNotification notification = new BalanceChangeNotification();
+        int flags = buffer.get();
+        notification.setRonChanged((flags & RON_CHANGED) != 0);
+        notification.setEuroChanged((flags & EURO_CHANGED) != 0);
+
+        int digits = buffer.get() & 0xFF;
+        char[] cnp = new char[digits];
+        for (int i = 0; i < digits; i += 2) {
+            int packed = buffer.get();
+            cnp[i] = (char) ('0' + (packed >> 4 & 0xF));
+            if (i + 1 < digits) {
+                cnp[i + 1] = (char) ('0' + (packed & 0xF));
+            }
+        }
+        notification.setCnp(new String(cnp));
+
+        notification.setRonBalance(getMoney(buffer));
+        notification.setEuroBalance(getMoney(buffer));
+        notification.setSequence(buffer.getLong());
+        notification.setSentAt(buffer.getLong());
+        return notification;
+    }
+
+    private static void putMoney(ByteBuffer buffer, Money value) {
+        buffer.put((byte) Money.SCALE);
+        buffer.putLong(value.minorUnits());
+    }
+
+    private static Money getMoney(ByteBuffer buffer) {
+        int scale = buffer.get();
+        long unscaled = buffer.getLong();
+        return scale == Money.SCALE ? Money.ofMinor(unscaled) : Money.of(BigDecimal.valueOf(unscaled, scale));
+    }
+
+    private static boolean isNumeric(String cnp) {
+        if (cnp == null || cnp.isEmpty() || cnp.length() > MAX_CNP_DIGITS) {
+            return false;
+        }
+        for (int i = 0; i < cnp.length(); i++) {
+            char c = cnp.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
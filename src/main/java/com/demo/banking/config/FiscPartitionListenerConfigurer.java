@@ -0,0 +1,80 @@
+package com.demo.banking.config;
+
+import com.demo.banking.model.BalanceChangeNotification;
+import com.demo.banking.service.FiscService;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.listener.MethodRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Registers one FISC listener container per notification partition, each with a single consumer, so the
+ * notifications of a client are handled strictly in the order they were published while partitions are
+ * consumed in parallel. Containers are created from the same factories as the listeners on the shared
+ * queue and call the FISC handler selected by {@code banking.fisc.listener.mode}; they are named
+ * {@code fisc-partition-<n>} in the listener endpoint registry.
+ */
+@Component
+@ConditionalOnExpression("${banking.notifications.partitions:0} > 0 and '${banking.broker:rabbitmq}' == 'rabbitmq'")
+public class FiscPartitionListenerConfigurer implements RabbitListenerConfigurer {
+    public static final String ENDPOINT_ID_PREFIX = "fisc-partition-";
+
+    private final FiscService fiscService;
+    private final NotificationRouting routing;
+    private final BeanFactory beanFactory;
+    private final boolean batchListener;
+
+    public FiscPartitionListenerConfigurer(FiscService fiscService,
+                                           NotificationRouting routing,
+                                           BeanFactory beanFactory,
+                                           @Value("${banking.fisc.listener.mode:single}") String listenerMode) {
+        this.fiscService = fiscService;
+        this.routing = routing;
+        this.beanFactory = beanFactory;
+        this.batchListener = "batch".equals(listenerMode);
+    }
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        DefaultMessageHandlerMethodFactory handlerMethodFactory = new DefaultMessageHandlerMethodFactory();
+        handlerMethodFactory.setBeanFactory(beanFactory);
+        handlerMethodFactory.afterPropertiesSet();
+
+        Method handler = listenerMethod();
+        // Without an explicit factory the registrar uses Spring Boot's rabbitListenerContainerFactory
+        RabbitListenerContainerFactory<?> containerFactory = batchListener
+                ? beanFactory.getBean(RabbitMQConfig.BATCH_CONTAINER_FACTORY, RabbitListenerContainerFactory.class)
+                : null;
+
+        for (int partition = 0; partition < routing.getPartitions(); partition++) {
+            MethodRabbitListenerEndpoint endpoint = new MethodRabbitListenerEndpoint();
+            endpoint.setId(ENDPOINT_ID_PREFIX + partition);
+            endpoint.setQueueNames(NotificationRouting.partitionQueueName(partition));
+            endpoint.setConcurrency("1-1");
+            endpoint.setBatchListener(batchListener);
+            endpoint.setBean(fiscService);
+            endpoint.setMethod(handler);
+            endpoint.setMessageHandlerMethodFactory(handlerMethodFactory);
+            endpoint.setBeanFactory(beanFactory);
+            registrar.registerEndpoint(endpoint, containerFactory);
+        }
+    }
+
+    private Method listenerMethod() {
+        try {
+            return batchListener
+                    ? FiscService.class.getMethod("handleBalanceChangeNotifications", List.class)
+                    : FiscService.class.getMethod("handleBalanceChangeNotification", BalanceChangeNotification.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("FISC listener method not found", e);
+        }
+    }
+}
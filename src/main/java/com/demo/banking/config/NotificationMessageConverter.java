@@ -0,0 +1,44 @@
+package com.demo.banking.config;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+/**
+ * Message converter shared by the bank and FISC.
+ * <p>
+ * Incoming messages are decoded by their content type, so JSON and {@link BalanceChangeBinaryConverter#CONTENT_TYPE}
+ * messages can be mixed on the same queue while producers and consumers are switched over. Outgoing
+ * notifications use the configured {@link WireFormat}; anything the binary layout cannot hold is sent as JSON.
+ */
+public class NotificationMessageConverter extends ContentTypeDelegatingMessageConverter {
+
+    public enum WireFormat {
+        JSON,
+        BINARY
+    }
+
+    private final WireFormat wireFormat;
+    private final Jackson2JsonMessageConverter jsonConverter;
+    private final BalanceChangeBinaryConverter binaryConverter = new BalanceChangeBinaryConverter();
+
+    public NotificationMessageConverter(WireFormat wireFormat) {
+        this(wireFormat, new Jackson2JsonMessageConverter());
+    }
+
+    private NotificationMessageConverter(WireFormat wireFormat, Jackson2JsonMessageConverter jsonConverter) {
+        super(jsonConverter);
+        this.wireFormat = wireFormat;
+        this.jsonConverter = jsonConverter;
+        addDelegate(BalanceChangeBinaryConverter.CONTENT_TYPE, binaryConverter);
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        if (wireFormat == WireFormat.BINARY && binaryConverter.canEncode(object)) {
+            return binaryConverter.toMessage(object, messageProperties);
+        }
+        return jsonConverter.toMessage(object, messageProperties);
+    }
+}
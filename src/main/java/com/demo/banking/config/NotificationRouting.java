@@ -0,0 +1,68 @@
+package com.demo.banking.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which FISC queue receives the notifications of a client.
+ * <p>
+ * With {@code banking.notifications.partitions=0} every notification is routed to the shared
+ * {@link RabbitMQConfig#QUEUE_NAME}. With N partitions the notifications of a client always go to the
+ * partition queue selected by the hash of its CNP, whose single consumer receives them in the order
+ * they were published.
+ */
+@Component
+public class NotificationRouting {
+    private final int partitions;
+
+    public NotificationRouting(@Value("${banking.notifications.partitions:0}") int partitions) {
+        if (partitions < 0) {
+            throw new IllegalArgumentException("Number of notification partitions must not be negative");
+        }
+        this.partitions = partitions;
+    }
+
+    public static String partitionQueueName(int partition) {
+        return RabbitMQConfig.QUEUE_NAME + "." + partition;
+    }
+
+    public static String partitionRoutingKey(int partition) {
+        return RabbitMQConfig.ROUTING_KEY + "." + partition;
+    }
+
+    public boolean isPartitioned() {
+        return partitions > 0;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * String hash codes are specified by the JLS, so every producer maps a CNP to the same partition.
+     */
+    public int partitionOf(String cnp) {
+        return Math.floorMod(cnp.hashCode(), partitions);
+    }
+
+    public String routingKey(String cnp) {
+        return isPartitioned() ? partitionRoutingKey(partitionOf(cnp)) : RabbitMQConfig.ROUTING_KEY;
+    }
+
+    /**
+     * @return routing keys of all queues FISC consumes from
+     */
+    public List<String> routingKeys() {
+        if (!isPartitioned()) {
+            return List.of(RabbitMQConfig.ROUTING_KEY);
+        }
+        List<String> routingKeys = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            routingKeys.add(partitionRoutingKey(partition));
+        }
+        return routingKeys;
+    }
+}
@@ -2,21 +2,31 @@ package com.demo.banking.config;
 
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 public class RabbitMQConfig {
 
     public static final String EXCHANGE_NAME = "bank-exchange";
     public static final String QUEUE_NAME = "fisc-notification-queue";
     public static final String ROUTING_KEY = "bank.client.balance.change";
+    public static final String BATCH_CONTAINER_FACTORY = "fiscBatchContainerFactory";
 
     @Bean
     public Queue fiscNotificationQueue() {
@@ -35,15 +45,66 @@ public class RabbitMQConfig {
                 .with(ROUTING_KEY);
     }
 
+    /**
+     * Partition queues used when {@code banking.notifications.partitions} is positive, each bound with its own
+     * routing key. Queues allow a single active consumer, so when several application instances consume them
+     * one takes over a partition only after the previous one has stopped and ordering is kept across instances.
+     * The shared queue and its listeners stay in place, so messages sent before switching to partitions are still
+     * consumed.
+     */
+    @Bean
+    public Declarables fiscPartitionQueues(TopicExchange bankExchange, NotificationRouting routing) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (int partition = 0; partition < routing.getPartitions(); partition++) {
+            Queue queue = QueueBuilder.durable(NotificationRouting.partitionQueueName(partition))
+                    .singleActiveConsumer()
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue)
+                    .to(bankExchange)
+                    .with(NotificationRouting.partitionRoutingKey(partition)));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * Reads JSON and binary notifications alike and writes the format selected by
+     * {@code banking.notifications.wire-format}
+     */
     @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public MessageConverter notificationMessageConverter(
+            @Value("${banking.notifications.wire-format:json}") NotificationMessageConverter.WireFormat wireFormat) {
+        return new NotificationMessageConverter(wireFormat);
     }
 
     @Bean
-    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+    @ConditionalOnProperty(name = "banking.broker", havingValue = "rabbitmq", matchIfMissing = true)
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter) {
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
-        rabbitTemplate.setMessageConverter(jsonMessageConverter());
+        rabbitTemplate.setMessageConverter(messageConverter);
         return rabbitTemplate;
     }
+
+    /**
+     * Listener containers that hand FISC up to {@code batch-size} notifications per call. A smaller batch is
+     * delivered when no further message arrives within {@code receive-timeout-ms}; the batch is acknowledged
+     * with a single ack once the listener returns. Everything else, such as concurrency, auto-startup,
+     * acknowledge mode, prefetch, retry and virtual threads, comes from {@code spring.rabbitmq.listener.simple.*}
+     * like for the containers configured by Spring Boot; the prefetch should be at least the batch size.
+     */
+    @Bean(BATCH_CONTAINER_FACTORY)
+    @ConditionalOnProperty(name = "banking.broker", havingValue = "rabbitmq", matchIfMissing = true)
+    public SimpleRabbitListenerContainerFactory fiscBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${banking.fisc.listener.batch-size:100}") int batchSize,
+            @Value("${banking.fisc.listener.receive-timeout-ms:50}") long receiveTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeout);
+        return factory;
+    }
 }
@@ -1,22 +1,48 @@
 package com.demo.banking.controller;
 
+import com.demo.banking.model.BatchOperation;
+import com.demo.banking.model.BatchOperationResult;
 import com.demo.banking.model.Client;
+import com.demo.banking.model.ClientAccountInfo;
 import com.demo.banking.model.Currency;
 import com.demo.banking.model.ErrorResponse;
+import com.demo.banking.model.Money;
+import com.demo.banking.model.OnboardingResult;
+import com.demo.banking.service.AdmissionControl.OverloadedException;
+import com.demo.banking.service.AdmissionControl.RateLimitedException;
+import com.demo.banking.service.AdmissionControl.RejectedException;
 import com.demo.banking.service.BankService;
+import com.demo.banking.service.BankService.OnboardingException;
+import com.demo.banking.service.ClientExportService;
+import com.demo.banking.service.ClientMutationGuard;
+import com.demo.banking.service.IdempotencyService;
+import com.demo.banking.service.IdempotencyService.IdempotencyKeyException;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/clients")
 public class ClientController {
     private final BankService bankService;
+    private final ClientMutationGuard mutationGuard;
+    private final ClientExportService exportService;
+    private final IdempotencyService idempotency;
 
-    public ClientController(BankService bankService) {
+    public ClientController(BankService bankService, ClientMutationGuard mutationGuard,
+                            ClientExportService exportService, IdempotencyService idempotency) {
         this.bankService = bankService;
+        this.mutationGuard = mutationGuard;
+        this.exportService = exportService;
+        this.idempotency = idempotency;
     }
 
     @PostMapping("/{cnp}")
@@ -24,10 +50,16 @@ public class ClientController {
         return ResponseEntity.ok(bankService.createAccounts(cnp));
     }
 
+    // Creates clients for a JSON array of CNPs, skipping those that already exist
+    @PostMapping("/bulk")
+    public ResponseEntity<OnboardingResult> onboardClients(@RequestBody List<String> cnps) {
+        return ResponseEntity.ok(bankService.onboardClients(cnps));
+    }
+
     @DeleteMapping("/{cnp}")
     public ResponseEntity<?> closeAccounts(@PathVariable String cnp) {
         try {
-            bankService.closeAccounts(cnp);
+            mutationGuard.run(cnp, () -> bankService.closeAccounts(cnp));
             return ResponseEntity.ok().build();
         } catch (IllegalStateException e) {
             return ResponseEntity.badRequest()
@@ -35,31 +67,121 @@ public class ClientController {
         }
     }
 
+    // Streams every client as newline-delimited JSON; written synchronously, so long exports are not cut
+    // off by the async request timeout
+    @GetMapping(value = "/export", produces = ClientExportService.NDJSON)
+    public void exportClients(HttpServletResponse response) throws IOException {
+        response.setContentType(ClientExportService.NDJSON);
+        exportService.writeNdjson(response.getOutputStream());
+    }
+
     @GetMapping("/{cnp}")
-    public ResponseEntity<Client> getAccountInfo(@PathVariable String cnp) {
+    public ResponseEntity<ClientAccountInfo> getAccountInfo(@PathVariable String cnp) {
         return ResponseEntity.ok(bankService.getAccountInfo(cnp));
     }
 
+    // Deposit, withdraw and exchange accept an optional Idempotency-Key header: a retry with the same key
+    // replays the first response instead of being applied again
     @PostMapping("/{cnp}/deposit")
-    public ResponseEntity<Void> deposit(
+    public ResponseEntity<?> deposit(
             @PathVariable String cnp,
             @RequestParam Currency currency,
-            @RequestParam BigDecimal amount) {
-        bankService.deposit(cnp, currency, amount);
-        return ResponseEntity.ok().build();
+            @RequestParam BigDecimal amount,
+            @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        Money money = Money.of(amount);
+        return mutationGuard.execute(cnp, () -> idempotency.execute(idempotencyKey,
+                "deposit " + cnp + " " + currency + " " + money, () -> {
+                    bankService.deposit(cnp, currency, money);
+                    return null;
+                }));
     }
 
     @PostMapping("/{cnp}/withdraw")
     public ResponseEntity<?> withdraw(
             @PathVariable String cnp,
             @RequestParam Currency currency,
-            @RequestParam BigDecimal amount) {
+            @RequestParam BigDecimal amount,
+            @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        Money money = Money.of(amount);
         try {
-            bankService.withdraw(cnp, currency, amount);
-            return ResponseEntity.ok().build();
+            return mutationGuard.execute(cnp, () -> idempotency.execute(idempotencyKey,
+                    "withdraw " + cnp + " " + currency + " " + money, () -> {
+                        bankService.withdraw(cnp, currency, money);
+                        return null;
+                    }));
         } catch (IllegalStateException e) {
             return ResponseEntity.badRequest()
                     .body(new ErrorResponse("Withdraw operation failed: " + e.getMessage()));
         }
     }
+
+    // Sells an amount from the account in the given currency and credits its value to the other account
+    @PostMapping("/{cnp}/exchange")
+    public ResponseEntity<?> exchange(
+            @PathVariable String cnp,
+            @RequestParam Currency from,
+            @RequestParam BigDecimal amount,
+            @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        Money money = Money.of(amount);
+        try {
+            return mutationGuard.execute(cnp, () -> idempotency.execute(idempotencyKey,
+                    "exchange " + cnp + " " + from + " " + money, () -> bankService.exchange(cnp, from, money)));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse("Exchange failed: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/batch")
+    public ResponseEntity<List<BatchOperationResult>> processBatch(@RequestBody List<BatchOperation> operations) {
+        List<String> cnps = operations.stream().map(BatchOperation::getCnp).toList();
+        return ResponseEntity.ok(mutationGuard.execute(cnps, () -> bankService.processBatch(operations)));
+    }
+
+    // Invalid amounts, e.g. with more than two decimals, and unknown clients
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+    }
+
+    // Balances that would overflow
+    @ExceptionHandler(ArithmeticException.class)
+    public ResponseEntity<ErrorResponse> handleOutOfRange(ArithmeticException e) {
+        return ResponseEntity.badRequest().body(new ErrorResponse(BankService.OUT_OF_RANGE));
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ErrorResponse> handleConcurrentUpdate(OptimisticLockingFailureException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(new ErrorResponse("Concurrent update of the same client, please retry"));
+    }
+
+    @ExceptionHandler(RateLimitedException.class)
+    public ResponseEntity<ErrorResponse> handleRateLimited(RateLimitedException e) {
+        return rejected(HttpStatus.TOO_MANY_REQUESTS, e);
+    }
+
+    @ExceptionHandler(OverloadedException.class)
+    public ResponseEntity<ErrorResponse> handleOverloaded(OverloadedException e) {
+        return rejected(HttpStatus.SERVICE_UNAVAILABLE, e);
+    }
+
+    // Bulk onboarding that failed part way, reporting the clients already onboarded
+    @ExceptionHandler(OnboardingException.class)
+    public ResponseEntity<OnboardingResult> handleOnboardingFailure(OnboardingException e) {
+        return ResponseEntity.internalServerError().body(e.getResult());
+    }
+
+    @ExceptionHandler(IdempotencyKeyException.class)
+    public ResponseEntity<ErrorResponse> handleIdempotencyKey(IdempotencyKeyException e) {
+        return ResponseEntity.unprocessableEntity().body(new ErrorResponse(e.getMessage()));
+    }
+
+    private ResponseEntity<ErrorResponse> rejected(HttpStatus status, RejectedException e) {
+        // Retry-After is in whole seconds, rounded up so a client retrying on time is admitted
+        long seconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+                .body(new ErrorResponse(e.getMessage()));
+    }
 }
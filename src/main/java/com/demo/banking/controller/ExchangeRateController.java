@@ -0,0 +1,42 @@
+package com.demo.banking.controller;
+
+import com.demo.banking.model.ErrorResponse;
+import com.demo.banking.model.ExchangeRate;
+import com.demo.banking.service.ExchangeRates;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.math.BigDecimal;
+
+@RestController
+@RequestMapping("/api/exchange-rate")
+public class ExchangeRateController {
+    private final ExchangeRates exchangeRates;
+
+    public ExchangeRateController(ExchangeRates exchangeRates) {
+        this.exchangeRates = exchangeRates;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> getExchangeRate() {
+        try {
+            return ResponseEntity.ok(exchangeRates.current());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Publishes new rates, applied to every exchange from now on
+    @PutMapping
+    public ResponseEntity<?> publishExchangeRate(
+            @RequestParam BigDecimal eurRonRate,
+            @RequestParam(defaultValue = "0") BigDecimal spread) {
+        try {
+            ExchangeRate rate = exchangeRates.publish(eurRonRate, spread);
+            return ResponseEntity.ok(rate);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+}
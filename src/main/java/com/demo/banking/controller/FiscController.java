@@ -1,6 +1,11 @@
 package com.demo.banking.controller;
 
+import com.demo.banking.model.BalanceAnalytics;
+import com.demo.banking.model.Currency;
+import com.demo.banking.model.ErrorResponse;
+import com.demo.banking.service.BalanceAggregates;
 import com.demo.banking.service.BankService;
+import com.demo.banking.service.ClientMutationGuard;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -8,20 +13,39 @@ import org.springframework.web.bind.annotation.*;
 @RequestMapping("/api/fisc")
 public class FiscController {
     private final BankService bankService;
+    private final ClientMutationGuard mutationGuard;
+    private final BalanceAggregates aggregates;
 
-    public FiscController(BankService bankService) {
+    public FiscController(BankService bankService, ClientMutationGuard mutationGuard, BalanceAggregates aggregates) {
         this.bankService = bankService;
+        this.mutationGuard = mutationGuard;
+        this.aggregates = aggregates;
     }
 
+    // Guarded like balance mutations, so no deposit commits between reading the balances FISC starts from
+    // and flagging the client, where the fast path would skip its notification
     @PostMapping("/monitor/{cnp}")
     public ResponseEntity<Void> startMonitoring(@PathVariable String cnp) {
-        bankService.startMonitoring(cnp);
+        mutationGuard.run(cnp, () -> bankService.startMonitoring(cnp));
         return ResponseEntity.ok().build();
     }
 
     @DeleteMapping("/monitor/{cnp}")
     public ResponseEntity<Void> stopMonitoring(@PathVariable String cnp) {
-        bankService.stopMonitoring(cnp);
+        mutationGuard.run(cnp, () -> bankService.stopMonitoring(cnp));
         return ResponseEntity.ok().build();
     }
+
+    // Totals, histogram and largest balances of one currency, served from running aggregates
+    @GetMapping("/analytics")
+    public ResponseEntity<?> getAnalytics(
+            @RequestParam Currency currency,
+            @RequestParam(defaultValue = "ALL") BalanceAnalytics.Scope scope,
+            @RequestParam(defaultValue = "10") int top) {
+        try {
+            return ResponseEntity.ok(aggregates.getAnalytics(scope, currency, top));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
 }
@@ -0,0 +1,282 @@
+package com.demo.banking.loadgen;
+
+import com.demo.banking.model.Currency;
+import com.demo.banking.model.Money;
+import com.demo.banking.repository.OutboxMessageRepository;
+import com.demo.banking.service.BankService;
+import com.demo.banking.service.ClientMutationGuard;
+import com.demo.banking.service.NotificationService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator running many clients through the lifecycle of the demo scenario and reporting
+ * throughput, latency percentiles per operation and the end-to-end lag of FISC notifications.
+ * <p>
+ * Each simulated client is created, receives an initial deposit in both currencies, is monitored by FISC
+ * with probability {@code monitored-fraction}, performs {@code operations-per-client} deposits,
+ * withdrawals and account info reads drawn according to the configured weights, and is finally unmonitored,
+ * emptied and closed. {@code concurrency} worker threads each run one client at a time, calling the
+ * services the way the REST controllers do.
+ * <p>
+ * Every client draws its operations and amounts from its own random generator seeded from {@code seed}
+ * and the client's index, so a given configuration issues the same requests, with the same outcomes,
+ * on every run regardless of thread scheduling.
+ */
+@Component
+@ConditionalOnProperty(name = "banking.loadgen.enabled", havingValue = "true")
+public class LoadGenerator implements CommandLineRunner {
+
+    private enum Operation {
+        CREATE,
+        DEPOSIT,
+        WITHDRAW,
+        ACCOUNT_INFO,
+        START_MONITORING,
+        STOP_MONITORING,
+        PREPARE_CLOSURE,
+        CLOSE
+    }
+
+    private static final class OperationStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder failed = new LongAdder();
+    }
+
+    // Simulated CNPs are this value plus the client index, always 13 digits
+    private static final long CNP_BASE = 5_000_000_000_000L;
+    private static final long DRAIN_TIMEOUT_MS = 60_000;
+
+    private final BankService bankService;
+    private final ClientMutationGuard mutationGuard;
+    private final NotificationService notificationService;
+    private final OutboxMessageRepository outboxRepository;
+    private final ObjectProvider<LocalBroker> localBroker;
+    private final ApplicationContext context;
+    private final int clients;
+    private final int concurrency;
+    private final int operationsPerClient;
+    private final double monitoredFraction;
+    private final long seed;
+    private final int depositWeight;
+    private final int withdrawWeight;
+    private final int infoWeight;
+    private final boolean exitWhenDone;
+
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+
+    public LoadGenerator(BankService bankService,
+                         ClientMutationGuard mutationGuard,
+                         NotificationService notificationService,
+                         OutboxMessageRepository outboxRepository,
+                         ObjectProvider<LocalBroker> localBroker,
+                         ApplicationContext context,
+                         @Value("${banking.loadgen.clients:1000}") int clients,
+                         @Value("${banking.loadgen.concurrency:8}") int concurrency,
+                         @Value("${banking.loadgen.operations-per-client:20}") int operationsPerClient,
+                         @Value("${banking.loadgen.monitored-fraction:0.2}") double monitoredFraction,
+                         @Value("${banking.loadgen.seed:42}") long seed,
+                         @Value("${banking.loadgen.deposit-weight:50}") int depositWeight,
+                         @Value("${banking.loadgen.withdraw-weight:30}") int withdrawWeight,
+                         @Value("${banking.loadgen.info-weight:20}") int infoWeight,
+                         @Value("${banking.loadgen.exit-when-done:true}") boolean exitWhenDone) {
+        if (clients < 0 || concurrency <= 0 || operationsPerClient < 0) {
+            throw new IllegalArgumentException("Load generator clients and operations must not be negative and concurrency must be positive");
+        }
+        if (monitoredFraction < 0 || monitoredFraction > 1) {
+            throw new IllegalArgumentException("Monitored fraction must be between 0 and 1");
+        }
+        if (depositWeight < 0 || withdrawWeight < 0 || infoWeight < 0 || depositWeight + withdrawWeight + infoWeight == 0) {
+            throw new IllegalArgumentException("Operation weights must not be negative and at least one must be positive");
+        }
+
+        this.bankService = bankService;
+        this.mutationGuard = mutationGuard;
+        this.notificationService = notificationService;
+        this.outboxRepository = outboxRepository;
+        this.localBroker = localBroker;
+        this.context = context;
+        this.clients = clients;
+        this.concurrency = concurrency;
+        this.operationsPerClient = operationsPerClient;
+        this.monitoredFraction = monitoredFraction;
+        this.seed = seed;
+        this.depositWeight = depositWeight;
+        this.withdrawWeight = withdrawWeight;
+        this.infoWeight = infoWeight;
+        this.exitWhenDone = exitWhenDone;
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        System.out.println("LOADGEN: Running " + clients + " clients on " + concurrency + " threads, seed " + seed);
+        long elapsedNanos = generate();
+        boolean drained = awaitNotifications();
+        printReport(elapsedNanos, drained);
+
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    /**
+     * Runs all clients and waits for them to finish.
+     *
+     * @return wall-clock duration of the run in nanoseconds
+     */
+    private long generate() throws Exception {
+        AtomicInteger nextClient = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> running = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                running.add(workers.submit(() -> {
+                    int index;
+                    while ((index = nextClient.getAndIncrement()) < clients) {
+                        runClient(index);
+                    }
+                }));
+            }
+            for (Future<?> worker : running) {
+                worker.get();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void runClient(int index) {
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + index);
+        String cnp = String.valueOf(CNP_BASE + index);
+
+        timed(Operation.CREATE, () -> bankService.createAccounts(cnp));
+        deposit(cnp, Currency.RON, Money.ofMinor(random.nextLong(200_000, 500_001)));
+        deposit(cnp, Currency.EUR, Money.ofMinor(random.nextLong(200_000, 500_001)));
+
+        boolean monitored = random.nextDouble() < monitoredFraction;
+        if (monitored) {
+            timed(Operation.START_MONITORING, () -> bankService.startMonitoring(cnp));
+        }
+
+        int totalWeight = depositWeight + withdrawWeight + infoWeight;
+        for (int i = 0; i < operationsPerClient; i++) {
+            int draw = random.nextInt(totalWeight);
+            Currency currency = random.nextBoolean() ? Currency.RON : Currency.EUR;
+            Money amount = Money.ofMinor(random.nextLong(100, 50_001));
+            if (draw < depositWeight) {
+                deposit(cnp, currency, amount);
+            } else if (draw < depositWeight + withdrawWeight) {
+                timed(Operation.WITHDRAW, () -> mutationGuard.run(cnp, () -> bankService.withdraw(cnp, currency, amount)));
+            } else {
+                timed(Operation.ACCOUNT_INFO, () -> bankService.getAccountInfo(cnp));
+            }
+        }
+
+        if (monitored) {
+            timed(Operation.STOP_MONITORING, () -> bankService.stopMonitoring(cnp));
+        }
+        timed(Operation.PREPARE_CLOSURE, () -> mutationGuard.run(cnp, () -> bankService.prepareAccountsForClosure(cnp)));
+        timed(Operation.CLOSE, () -> mutationGuard.run(cnp, () -> bankService.closeAccounts(cnp)));
+    }
+
+    private void deposit(String cnp, Currency currency, Money amount) {
+        timed(Operation.DEPOSIT, () -> mutationGuard.run(cnp, () -> bankService.deposit(cnp, currency, amount)));
+    }
+
+    private void timed(Operation operation, Runnable action) {
+        OperationStats operationStats = stats.get(operation);
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // Rejected by the business rules, e.g. a withdrawal below the minimum balance
+            operationStats.rejected.increment();
+        } catch (RuntimeException e) {
+            operationStats.failed.increment();
+        } finally {
+            operationStats.latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Waits until every notification produced by the run has been published and, with the local broker,
+     * handled by FISC.
+     *
+     * @return whether all notifications were delivered within the timeout
+     */
+    private boolean awaitNotifications() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        if (notificationService.getMode() == NotificationService.Mode.ASYNC) {
+            notificationService.flush();
+        } else if (notificationService.getMode() == NotificationService.Mode.OUTBOX) {
+            while (outboxRepository.count() > 0) {
+                if (System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+                Thread.sleep(50);
+            }
+        }
+
+        LocalBroker broker = localBroker.getIfAvailable();
+        return broker == null || broker.awaitIdle(Math.max(0, deadline - System.currentTimeMillis()));
+    }
+
+    private void printReport(long elapsedNanos, boolean drained) {
+        long operations = 0;
+        for (OperationStats operationStats : stats.values()) {
+            operations += operationStats.latency.getCount();
+        }
+        double seconds = elapsedNanos / 1e9;
+
+        System.out.println("LOADGEN: " + clients + " clients, " + operations + " operations in "
+                + String.format("%.2f s: %.0f operations/s, %.0f clients/s", seconds, operations / seconds, clients / seconds));
+        System.out.println(String.format("LOADGEN: %-16s %9s %9s %7s %10s %10s %10s %10s",
+                "operation", "count", "rejected", "failed", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats operationStats = entry.getValue();
+            if (operationStats.latency.getCount() > 0) {
+                printRow(entry.getKey().name().toLowerCase(), operationStats.latency,
+                        operationStats.rejected.sum(), operationStats.failed.sum());
+            }
+        }
+
+        LocalBroker broker = localBroker.getIfAvailable();
+        if (broker != null) {
+            printRow("notification lag", broker.getLag(), 0, 0);
+        } else {
+            System.out.println("LOADGEN: Notification lag is reported by FISC as fisc.notification.lag");
+        }
+        if (!drained) {
+            System.out.println("LOADGEN: Not all notifications were delivered within " + DRAIN_TIMEOUT_MS + " ms");
+        }
+    }
+
+    private static void printRow(String name, LatencyHistogram latency, long rejected, long failed) {
+        System.out.println(String.format("LOADGEN: %-16s %9d %9d %7d %10.3f %10.3f %10.3f %10.3f",
+                name, latency.getCount(), rejected, failed,
+                latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6,
+                latency.getValueAtPercentile(99.9) / 1e6, latency.getMax() / 1e6));
+    }
+}
@@ -0,0 +1,186 @@
+package com.demo.banking.loadgen;
+
+import com.demo.banking.model.BalanceChangeNotification;
+import com.demo.banking.service.FiscService;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the RabbitMQ queue feeding FISC, used to run the application without a broker.
+ * <p>
+ * Messages are converted with the configured {@link MessageConverter} on both sides, exactly as they
+ * would be on the wire, and kept in one bounded queue per routing key FISC consumes from; a full queue blocks
+ * the publisher. {@code consumers} threads per queue take up to {@code batch-size} waiting messages at a time
+ * and hand them to the FISC listener selected by {@code banking.fisc.listener.mode}. Unlike the RabbitMQ
+ * container, a consumer does not wait for a batch to fill up. Messages are not persisted and not redelivered.
+ * <p>
+ * The end-to-end lag of every delivered notification, from its creation by the bank until FISC has
+ * handled it, is recorded in {@link #getLag()}.
+ */
+public class LocalBroker {
+    private final Map<String, BlockingQueue<Message>> queues = new LinkedHashMap<>();
+    private final MessageConverter messageConverter;
+    private final FiscService fiscService;
+    private final boolean batchListener;
+    private final int batchSize;
+    private final int consumers;
+
+    private final LatencyHistogram lag = new LatencyHistogram();
+    // Sent but not yet handled by FISC
+    private final AtomicLong unprocessed = new AtomicLong();
+    private final List<Thread> consumerThreads = new ArrayList<>();
+    private volatile boolean running;
+
+    /**
+     * @param routingKeys routing keys of the queues to create
+     * @param consumers   consumer threads per queue
+     * @param capacity    messages each queue holds before publishers block
+     */
+    public LocalBroker(MessageConverter messageConverter,
+                       FiscService fiscService,
+                       List<String> routingKeys,
+                       boolean batchListener,
+                       int batchSize,
+                       int consumers,
+                       int capacity) {
+        if (batchSize <= 0 || consumers <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Local broker batch size, consumers and capacity must be positive");
+        }
+
+        for (String routingKey : routingKeys) {
+            queues.put(routingKey, new ArrayBlockingQueue<>(capacity));
+        }
+        this.messageConverter = messageConverter;
+        this.fiscService = fiscService;
+        this.batchListener = batchListener;
+        this.batchSize = batchListener ? batchSize : 1;
+        this.consumers = consumers;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        int queueIndex = 0;
+        for (BlockingQueue<Message> queue : queues.values()) {
+            for (int i = 0; i < consumers; i++) {
+                Thread consumer = new Thread(() -> runConsumer(queue), "local-broker-" + queueIndex + "-" + i);
+                consumer.setDaemon(true);
+                consumer.start();
+                consumerThreads.add(consumer);
+            }
+            queueIndex++;
+        }
+    }
+
+    /**
+     * Stops the consumers after they have delivered everything that is still queued.
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        for (Thread consumer : consumerThreads) {
+            consumer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        consumerThreads.clear();
+    }
+
+    public void send(String routingKey, Object notification) {
+        BlockingQueue<Message> queue = queues.get(routingKey);
+        if (queue == null) {
+            throw new AmqpException("No local queue is bound to routing key " + routingKey);
+        }
+
+        Message message = messageConverter.toMessage(notification, new MessageProperties());
+        unprocessed.incrementAndGet();
+        try {
+            queue.put(message);
+        } catch (InterruptedException e) {
+            unprocessed.decrementAndGet();
+            Thread.currentThread().interrupt();
+            throw new AmqpException("Interrupted while publishing to the local broker", e);
+        }
+    }
+
+    /**
+     * Waits until every message sent so far has been handled by FISC.
+     *
+     * @return whether the broker became idle within the timeout
+     */
+    public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (unprocessed.get() > 0) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    public LatencyHistogram getLag() {
+        return lag;
+    }
+
+    private void runConsumer(BlockingQueue<Message> queue) {
+        List<Message> messages = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                messages.add(first);
+                queue.drainTo(messages, batchSize - 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            deliver(messages);
+            messages.clear();
+        }
+    }
+
+    private void deliver(List<Message> messages) {
+        List<BalanceChangeNotification> notifications = new ArrayList<>(messages.size());
+        long[] sentAt = new long[messages.size()];
+        for (Message message : messages) {
+            BalanceChangeNotification notification = (BalanceChangeNotification) messageConverter.fromMessage(message);
+            // The batch listener merges notifications in place, keep the original creation times
+            sentAt[notifications.size()] = notification.getSentAt();
+            notifications.add(notification);
+        }
+
+        try {
+            if (batchListener) {
+                fiscService.handleBalanceChangeNotifications(notifications);
+            } else {
+                for (BalanceChangeNotification notification : notifications) {
+                    fiscService.handleBalanceChangeNotification(notification);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.out.println("LOADGEN: FISC failed to handle " + notifications.size() + " notifications: " + e.getMessage());
+        }
+
+        long now = System.currentTimeMillis();
+        for (long sent : sentAt) {
+            if (sent > 0) {
+                lag.record(TimeUnit.MILLISECONDS.toNanos(Math.max(0, now - sent)));
+            }
+        }
+        unprocessed.addAndGet(-messages.size());
+    }
+}
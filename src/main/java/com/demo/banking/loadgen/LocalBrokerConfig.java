@@ -0,0 +1,38 @@
+package com.demo.banking.loadgen;
+
+import com.demo.banking.config.NotificationRouting;
+import com.demo.banking.service.FiscService;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Replaces RabbitMQ with an in-process {@link LocalBroker} when {@code banking.broker=local}. The FISC
+ * listener mode, batch size and number of consumers are taken from the same properties as the RabbitMQ
+ * listener containers, so a run against the local broker exercises the configured consumer path. With
+ * partitioned notifications every partition gets its own queue with a single consumer.
+ */
+@Configuration
+@ConditionalOnProperty(name = "banking.broker", havingValue = "local")
+public class LocalBrokerConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public LocalBroker localBroker(MessageConverter messageConverter,
+                                   FiscService fiscService,
+                                   NotificationRouting routing,
+                                   @Value("${banking.fisc.listener.mode:single}") String listenerMode,
+                                   @Value("${banking.fisc.listener.batch-size:100}") int batchSize,
+                                   @Value("${spring.rabbitmq.listener.simple.concurrency:1}") int consumers,
+                                   @Value("${banking.local-broker.capacity:100000}") int capacity) {
+        return new LocalBroker(messageConverter, fiscService, routing.routingKeys(), "batch".equals(listenerMode),
+                batchSize, routing.isPartitioned() ? 1 : consumers, capacity);
+    }
+
+    @Bean
+    public RabbitTemplate rabbitTemplate(LocalBroker localBroker) {
+        return new LocalRabbitTemplate(localBroker);
+    }
+}
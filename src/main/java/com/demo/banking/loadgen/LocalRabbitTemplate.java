@@ -0,0 +1,33 @@
+package com.demo.banking.loadgen;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+/**
+ * {@link RabbitTemplate} that publishes to a {@link LocalBroker} instead of a RabbitMQ connection. Only the
+ * operations used by the bank are supported: sending to the FISC exchange and grouping sends with
+ * {@link #invoke(OperationsCallback)}.
+ */
+public class LocalRabbitTemplate extends RabbitTemplate {
+    private final LocalBroker broker;
+
+    public LocalRabbitTemplate(LocalBroker broker) {
+        this.broker = broker;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // No connection factory to check
+    }
+
+    @Override
+    public void convertAndSend(String exchange, String routingKey, Object object) throws AmqpException {
+        broker.send(routingKey, object);
+    }
+
+    @Override
+    public <T> T invoke(OperationsCallback<T> action, com.rabbitmq.client.ConfirmCallback acks,
+                        com.rabbitmq.client.ConfirmCallback nacks) {
+        return action.doInRabbit(this);
+    }
+}
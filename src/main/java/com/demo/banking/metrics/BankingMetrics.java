@@ -0,0 +1,247 @@
+package com.demo.banking.metrics;
+
+import com.demo.banking.model.Currency;
+import com.demo.banking.service.AdmissionControl;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Meters of the bank side: operation latency by operation, currency and outcome, notification publishing,
+ * the account info cache, idempotent replays and admission control.
+ * <p>
+ * Every combination of tags is registered up front and looked up by enum ordinal, so recording
+ * on the request path does not build tag lists or touch the registry.
+ */
+@Component
+public class BankingMetrics {
+
+    public enum Operation {
+        CREATE_ACCOUNTS(false),
+        CLOSE_ACCOUNTS(false),
+        DEPOSIT(true),
+        WITHDRAW(true),
+        EXCHANGE(true),
+        BATCH(false),
+        ONBOARD_CLIENTS(false),
+        PREPARE_CLOSURE(false),
+        ACCOUNT_INFO(false),
+        START_MONITORING(false),
+        STOP_MONITORING(false);
+
+        final String tag = name().toLowerCase().replace('_', '-');
+        // Whether the operation acts on the account of one currency, tagged by it, or is tagged "none"
+        final boolean perCurrency;
+
+        Operation(boolean perCurrency) {
+            this.perCurrency = perCurrency;
+        }
+    }
+
+    public enum Outcome {
+        SUCCESS,
+        // Business rule violation, invalid amount or unknown client, reported to the caller as a 4xx
+        REJECTED,
+        // Turned away by admission control while the bank is overloaded, reported as a 503
+        SHED,
+        ERROR;
+
+        final String tag = name().toLowerCase();
+
+        public static Outcome of(RuntimeException e) {
+            if (e instanceof AdmissionControl.RejectedException) {
+                return SHED;
+            }
+            return e instanceof IllegalArgumentException || e instanceof IllegalStateException
+                    || e instanceof ArithmeticException ? REJECTED : ERROR;
+        }
+    }
+
+    public enum Shed {
+        // Too many mutations of one client, 429
+        CLIENT_RATE,
+        // Too many mutations overall, 429
+        GLOBAL_RATE,
+        // Too many notifications waiting to be published, 503
+        NOTIFICATION_QUEUE,
+        // No publish slot freed up in time, 503
+        PUBLISH_WINDOW;
+
+        final String tag = name().toLowerCase().replace('_', '-');
+    }
+
+    // Index used for operations that are not tied to a currency
+    private static final int NO_CURRENCY = Currency.values().length;
+
+    // Latency buckets published instead of full percentile histograms, which would add dozens of series per timer
+    private static final Duration[] LATENCY_SLOS = {Duration.ofMillis(1), Duration.ofMillis(5),
+            Duration.ofMillis(25), Duration.ofMillis(100), Duration.ofMillis(500)};
+
+    private final Timer[][][] operationTimers;
+    private final Timer publishTimer;
+    private final Counter publishedCounter;
+    private final Counter publishFailedCounter;
+    private final Counter coalescedCounter;
+    private final Counter replayedFromMemoryCounter;
+    private final Counter replayedFromDatabaseCounter;
+    private final Counter[] shedCounters;
+    private final MeterRegistry registry;
+
+    public BankingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Operation[] operations = Operation.values();
+        Currency[] currencies = Currency.values();
+        Outcome[] outcomes = Outcome.values();
+
+        // Only the currency tags an operation can produce: its currencies, or "none"
+        operationTimers = new Timer[operations.length][currencies.length + 1][];
+        for (Operation operation : operations) {
+            for (int c = 0; c <= currencies.length; c++) {
+                if (operation.perCurrency == (c == NO_CURRENCY)) {
+                    continue;
+                }
+                String currency = c == NO_CURRENCY ? "none" : currencies[c].name();
+                Timer[] timers = new Timer[outcomes.length];
+                for (Outcome outcome : outcomes) {
+                    timers[outcome.ordinal()] = Timer.builder("banking.operation")
+                            .description("Latency of bank operations")
+                            .tags("operation", operation.tag, "currency", currency, "outcome", outcome.tag)
+                            .serviceLevelObjectives(LATENCY_SLOS)
+                            .register(registry);
+                }
+                operationTimers[operation.ordinal()][c] = timers;
+            }
+        }
+
+        publishTimer = Timer.builder("banking.notification.publish")
+                .description("Latency of publishing balance change notifications to the broker")
+                .serviceLevelObjectives(LATENCY_SLOS)
+                .register(registry);
+        publishedCounter = Counter.builder("banking.notification.published")
+                .description("Balance change notifications sent to FISC")
+                .register(registry);
+        publishFailedCounter = Counter.builder("banking.notification.publish.failed")
+                .description("Balance change notifications that could not be published")
+                .register(registry);
+        coalescedCounter = Counter.builder("banking.notification.coalesced")
+                .description("Balance change notifications merged into a pending one for the same client")
+                .register(registry);
+        replayedFromMemoryCounter = Counter.builder("banking.idempotency.replayed")
+                .description("Requests answered with the recorded outcome of an earlier request with the same key")
+                .tag("source", "memory")
+                .register(registry);
+        replayedFromDatabaseCounter = Counter.builder("banking.idempotency.replayed")
+                .description("Requests answered with the recorded outcome of an earlier request with the same key")
+                .tag("source", "database")
+                .register(registry);
+
+        Shed[] reasons = Shed.values();
+        shedCounters = new Counter[reasons.length];
+        for (Shed reason : reasons) {
+            shedCounters[reason.ordinal()] = Counter.builder("banking.admission.shed")
+                    .description("Requests turned away by admission control")
+                    .tag("reason", reason.tag)
+                    .register(registry);
+        }
+    }
+
+    public void monitorPublishQueue(Collection<?> queue) {
+        Gauge.builder("banking.notification.pending", queue, Collection::size)
+                .description("Balance change notifications waiting to be published")
+                .register(registry);
+    }
+
+    public void monitorOutboxBacklog(LongSupplier pending) {
+        Gauge.builder("banking.outbox.pending", pending, LongSupplier::getAsLong)
+                .description("Outbox rows waiting to be relayed, as last counted by the relay")
+                .register(registry);
+    }
+
+    /**
+     * Publishes size, hit, miss and eviction counts of the cache as {@code cache.*} meters tagged
+     * {@code cache=account-info}.
+     */
+    public void monitorAccountInfoCache(AsyncCache<?, ?> cache) {
+        CaffeineCacheMetrics.monitor(registry, cache, "account-info");
+    }
+
+    /**
+     * Publishes the idempotency key index as {@code cache.*} meters tagged {@code cache=idempotency}.
+     */
+    public void monitorIdempotencyCache(Cache<?, ?> cache) {
+        CaffeineCacheMetrics.monitor(registry, cache, "idempotency");
+    }
+
+    /**
+     * Publishes a configured admission limit as {@code banking.admission.limit}, tagged by {@code limit}.
+     */
+    public void monitorAdmissionLimit(String limit, long value) {
+        Gauge.builder("banking.admission.limit", () -> value)
+                .description("Configured admission limits, 0 when disabled")
+                .tag("limit", limit)
+                .register(registry);
+    }
+
+    public void monitorPublishWindow(Semaphore permits, int window) {
+        Gauge.builder("banking.admission.publish.in-flight", permits, p -> window - p.availablePermits())
+                .description("Notifications being published on request threads")
+                .register(registry);
+    }
+
+    public void recordShed(Shed reason) {
+        shedCounters[reason.ordinal()].increment();
+    }
+
+    /**
+     * @param fromDatabase whether the outcome had to be read from the database, i.e. was no longer in memory
+     */
+    public void recordIdempotentReplay(boolean fromDatabase) {
+        (fromDatabase ? replayedFromDatabaseCounter : replayedFromMemoryCounter).increment();
+    }
+
+    /**
+     * @param currency    currency of the operation, required for deposits, withdrawals and exchanges and ignored
+     *                    for the operations that are not tied to one
+     * @param startNanos  value of {@link System#nanoTime()} taken when the operation started
+     */
+    public void recordOperation(Operation operation, Currency currency, Outcome outcome, long startNanos) {
+        int c = operation.perCurrency ? currency.ordinal() : NO_CURRENCY;
+        operationTimers[operation.ordinal()][c][outcome.ordinal()]
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPublish(long startNanos) {
+        recordPublish(startNanos, 1);
+    }
+
+    /**
+     * Records one round of publishing that sent {@code count} notifications.
+     */
+    public void recordPublish(long startNanos, int count) {
+        publishTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        publishedCounter.increment(count);
+    }
+
+    public void recordPublishFailure() {
+        recordPublishFailure(1);
+    }
+
+    public void recordPublishFailure(int count) {
+        publishFailedCounter.increment(count);
+    }
+
+    public void recordCoalesced() {
+        coalescedCounter.increment();
+    }
+}
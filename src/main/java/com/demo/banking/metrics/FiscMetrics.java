@@ -0,0 +1,114 @@
+package com.demo.banking.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the FISC side: consume latency, end-to-end lag, ignored, stale and coalesced notifications, cache size,
+ * cache snapshots and balance analytics reconciliation
+ */
+@Component
+public class FiscMetrics {
+    private final MeterRegistry registry;
+    private final Timer consumeTimer;
+    private final Timer lagTimer;
+    private final Counter ignoredCounter;
+    private final Counter staleCounter;
+    private final Counter coalescedCounter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer snapshotTimer;
+    private final Timer reconcileTimer;
+
+    public FiscMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        consumeTimer = Timer.builder("fisc.notification.consume")
+                .description("Time spent handling a balance change notification, or a batch of them")
+                .publishPercentileHistogram()
+                .register(registry);
+        lagTimer = Timer.builder("fisc.notification.lag")
+                .description("Time between the balance change in the bank and its handling by FISC")
+                .publishPercentileHistogram()
+                .register(registry);
+        ignoredCounter = Counter.builder("fisc.notification.ignored")
+                .description("Notifications received for clients that are not monitored")
+                .register(registry);
+        staleCounter = Counter.builder("fisc.notification.stale")
+                .description("Notifications dropped because a newer one had already been applied")
+                .register(registry);
+        coalescedCounter = Counter.builder("fisc.notification.coalesced")
+                .description("Notifications collapsed into a later one for the same client within a batch")
+                .register(registry);
+        batchSizeSummary = DistributionSummary.builder("fisc.notification.batch.size")
+                .description("Notifications received per batch by the batch listener")
+                .register(registry);
+        snapshotTimer = Timer.builder("fisc.snapshot.write")
+                .description("Time to write the snapshot of the monitored client cache")
+                .register(registry);
+        reconcileTimer = Timer.builder("fisc.analytics.reconcile")
+                .description("Time to rebuild the balance analytics aggregates from their sources")
+                .register(registry);
+    }
+
+    /**
+     * Exposes the number of cached monitored clients, read when the registry is scraped
+     */
+    public void monitorCache(Map<?, ?> monitoredClients) {
+        Gauge.builder("fisc.monitored.clients", monitoredClients, Map::size)
+                .description("Clients currently cached by FISC")
+                .register(registry);
+    }
+
+    /**
+     * @param startNanos value of {@link System#nanoTime()} taken when handling started
+     * @param sentAt     epoch millis at which the bank created the notification, 0 if unknown
+     */
+    public void recordConsumed(long startNanos, long sentAt) {
+        consumeTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        recordLag(sentAt);
+    }
+
+    /**
+     * Records a batch handled by the batch listener; the consume timer then measures the whole batch.
+     *
+     * @param startNanos value of {@link System#nanoTime()} taken when handling started
+     * @param size       notifications received in the batch
+     * @param coalesced  notifications collapsed into a later one for the same client
+     */
+    public void recordBatchConsumed(long startNanos, int size, int coalesced) {
+        consumeTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        batchSizeSummary.record(size);
+        coalescedCounter.increment(coalesced);
+    }
+
+    /**
+     * @param sentAt epoch millis at which the bank created the notification, 0 if unknown
+     */
+    public void recordLag(long sentAt) {
+        if (sentAt > 0) {
+            lagTimer.record(Math.max(0, System.currentTimeMillis() - sentAt), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void recordStale() {
+        staleCounter.increment();
+    }
+
+    public void recordIgnored() {
+        ignoredCounter.increment();
+    }
+
+    public void recordSnapshotWritten(long startNanos) {
+        snapshotTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordAnalyticsReconciled(long startNanos) {
+        reconcileTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
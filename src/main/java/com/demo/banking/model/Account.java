@@ -1,36 +1,50 @@
 package com.demo.banking.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
-import java.math.BigDecimal;
 import java.util.Objects;
 
 @Entity
 @Table(name = "accounts")
 public class Account {
+    // Pooled sequence so that onboarding many clients can group the account inserts into JDBC batches;
+    // on databases created before it existed, AccountSequenceInitializer moves it past the existing ids
+    public static final String ID_SEQUENCE = "account_seq";
+    public static final int ID_ALLOCATION_SIZE = 100;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @Enumerated(EnumType.STRING)
     private Currency currency;
 
-    private BigDecimal balance;
+    // Minor units, see Money
+    private Money balance;
+
+    // Optimistic locking guard against lost updates from concurrent mutations
+    @Version
+    private Long version;
+
+    // Sequence of the last ledger entry recorded for this account
+    private long ledgerSequence;
 
     // Minimum balance requirement is 1000 RON/EUR
-    public static final BigDecimal MIN_BALANCE = new BigDecimal("1000.00");
+    public static final Money MIN_BALANCE = Money.of("1000.00");
 
     // Default constructor required by JPA
     public Account() {
     }
 
     // Constructor for creating new accounts
-    public Account(Currency currency, BigDecimal balance) {
+    public Account(Currency currency, Money balance) {
         this.currency = currency;
         this.balance = balance;
     }
 
     // Constructor with all fields
-    public Account(Long id, Currency currency, BigDecimal balance) {
+    public Account(Long id, Currency currency, Money balance) {
         this.id = id;
         this.currency = currency;
         this.balance = balance;
@@ -53,14 +67,33 @@ public class Account {
         this.currency = currency;
     }
 
-    public BigDecimal getBalance() {
+    public Money getBalance() {
         return balance;
     }
 
-    public void setBalance(BigDecimal balance) {
+    public void setBalance(Money balance) {
         this.balance = balance;
     }
 
+    // Internal concurrency control, not part of the API
+    @JsonIgnore
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    @JsonIgnore
+    public long getLedgerSequence() {
+        return ledgerSequence;
+    }
+
+    public void setLedgerSequence(long ledgerSequence) {
+        this.ledgerSequence = ledgerSequence;
+    }
+
     // equals and hashCode methods
     @Override
     public boolean equals(Object o) {
@@ -0,0 +1,32 @@
+package com.demo.banking.model;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Balance analytics of one currency across all clients or monitored clients only, served from running
+ * aggregates by {@code GET /api/fisc/analytics}.
+ *
+ * @param histogram      non-empty balance buckets in increasing order
+ * @param top            largest balances, largest first
+ * @param reconciledAt   last time the aggregates were rebuilt from their source, null before the first run
+ */
+public record BalanceAnalytics(Scope scope, Currency currency, long accounts, Money total,
+                               List<Bucket> histogram, List<TopBalance> top, Instant reconciledAt) {
+
+    public enum Scope {
+        // Every open account, as stored by the bank
+        ALL,
+        // Accounts of monitored clients, as last known by FISC
+        MONITORED
+    }
+
+    /**
+     * Number of accounts with a balance of at least {@code from} and less than {@code to}
+     */
+    public record Bucket(Money from, Money to, long accounts) {
+    }
+
+    public record TopBalance(String cnp, Money balance) {
+    }
+}
@@ -1,17 +1,20 @@
 package com.demo.banking.model;
 
 import java.io.Serializable;
-import java.math.BigDecimal;
 
 /**
  * Message model for balance change notifications sent from Bank to FISC
  */
 public class BalanceChangeNotification implements Serializable {
     private String cnp;
-    private BigDecimal ronBalance;
-    private BigDecimal euroBalance;
+    private Money ronBalance;
+    private Money euroBalance;
     private boolean ronChanged;
     private boolean euroChanged;
+    // Epoch millis at which the bank created the notification, used to measure end-to-end lag
+    private long sentAt;
+    // Increases with every change published by the bank, 0 if unknown; used by FISC to drop stale updates
+    private long sequence;
 
     // Default constructor required for Jackson deserialization
     public BalanceChangeNotification() {
@@ -23,6 +26,25 @@ public class BalanceChangeNotification implements Serializable {
         this.euroBalance = client.getEuroAccount().getBalance();
         this.ronChanged = ronChanged;
         this.euroChanged = euroChanged;
+        this.sentAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Folds another notification for the same client into this one: balances and sequence are taken
+     * from whichever is newer (the other one when the sequences are equal), a currency counts as changed
+     * if it changed in either, and the earlier creation time is kept so lag is measured from the first change.
+     */
+    public void merge(BalanceChangeNotification other) {
+        if (other.sequence >= this.sequence) {
+            this.ronBalance = other.ronBalance;
+            this.euroBalance = other.euroBalance;
+            this.sequence = other.sequence;
+        }
+        this.ronChanged |= other.ronChanged;
+        this.euroChanged |= other.euroChanged;
+        if (other.sentAt > 0 && (this.sentAt == 0 || other.sentAt < this.sentAt)) {
+            this.sentAt = other.sentAt;
+        }
     }
 
     public String getCnp() {
@@ -33,19 +55,19 @@ public class BalanceChangeNotification implements Serializable {
         this.cnp = cnp;
     }
 
-    public BigDecimal getRonBalance() {
+    public Money getRonBalance() {
         return ronBalance;
     }
 
-    public void setRonBalance(BigDecimal ronBalance) {
+    public void setRonBalance(Money ronBalance) {
         this.ronBalance = ronBalance;
     }
 
-    public BigDecimal getEuroBalance() {
+    public Money getEuroBalance() {
         return euroBalance;
     }
 
-    public void setEuroBalance(BigDecimal euroBalance) {
+    public void setEuroBalance(Money euroBalance) {
         this.euroBalance = euroBalance;
     }
 
@@ -64,5 +86,20 @@ public class BalanceChangeNotification implements Serializable {
     public void setEuroChanged(boolean euroChanged) {
         this.euroChanged = euroChanged;
     }
-}
 
+    public long getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(long sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+}
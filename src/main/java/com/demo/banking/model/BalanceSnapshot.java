@@ -0,0 +1,83 @@
+package com.demo.banking.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+/**
+ * Balance of an account as of a given ledger sequence.
+ * The current balance is the snapshot balance plus the ledger entries recorded after it.
+ */
+@Entity
+@Table(name = "balance_snapshots")
+public class BalanceSnapshot implements Persistable<Long> {
+    @Id
+    @Column(name = "account_id")
+    private Long accountId;
+
+    private long sequence;
+
+    private Money balance;
+
+    private Instant takenAt;
+
+    // The id is assigned, so new snapshots are tracked explicitly to be inserted without a prior select
+    @Transient
+    private boolean isNew = true;
+
+    // Default constructor required by JPA
+    public BalanceSnapshot() {
+    }
+
+    public BalanceSnapshot(Long accountId, long sequence, Money balance, Instant takenAt) {
+        this.accountId = accountId;
+        this.sequence = sequence;
+        this.balance = balance;
+        this.takenAt = takenAt;
+    }
+
+    @Override
+    public Long getId() {
+        return accountId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public Money getBalance() {
+        return balance;
+    }
+
+    public void setBalance(Money balance) {
+        this.balance = balance;
+    }
+
+    public Instant getTakenAt() {
+        return takenAt;
+    }
+
+    public void setTakenAt(Instant takenAt) {
+        this.takenAt = takenAt;
+    }
+}
@@ -0,0 +1,56 @@
+package com.demo.banking.model;
+
+import java.math.BigDecimal;
+
+/**
+ * A single deposit or withdrawal submitted as part of a batch request
+ */
+public class BatchOperation {
+    private String cnp;
+    private Currency currency;
+    private BigDecimal amount;
+    private Direction direction;
+
+    // Default constructor required for Jackson deserialization
+    public BatchOperation() {
+    }
+
+    public BatchOperation(String cnp, Currency currency, BigDecimal amount, Direction direction) {
+        this.cnp = cnp;
+        this.currency = currency;
+        this.amount = amount;
+        this.direction = direction;
+    }
+
+    public String getCnp() {
+        return cnp;
+    }
+
+    public void setCnp(String cnp) {
+        this.cnp = cnp;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(Currency currency) {
+        this.currency = currency;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+}
@@ -0,0 +1,61 @@
+package com.demo.banking.model;
+
+/**
+ * Outcome of a single batch operation, reported in the same order as the request
+ */
+public class BatchOperationResult {
+    private int index;
+    private String cnp;
+    private boolean success;
+    private String message;
+
+    public BatchOperationResult() {
+    }
+
+    public BatchOperationResult(int index, String cnp, boolean success, String message) {
+        this.index = index;
+        this.cnp = cnp;
+        this.success = success;
+        this.message = message;
+    }
+
+    public static BatchOperationResult succeeded(int index, String cnp) {
+        return new BatchOperationResult(index, cnp, true, null);
+    }
+
+    public static BatchOperationResult failed(int index, String cnp, String message) {
+        return new BatchOperationResult(index, cnp, false, message);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getCnp() {
+        return cnp;
+    }
+
+    public void setCnp(String cnp) {
+        this.cnp = cnp;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
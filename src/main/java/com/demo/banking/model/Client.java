@@ -1,11 +1,11 @@
 package com.demo.banking.model;
 
 import jakarta.persistence.*;
-import java.math.BigDecimal;
 import java.util.Objects;
 
 @Entity
-@Table(name = "clients")
+// Monitored clients are read in CNP order by the FISC warm-up
+@Table(name = "clients", indexes = @Index(name = "idx_clients_monitored", columnList = "isMonitored, cnp"))
 public class Client {
     @Id
     private String cnp;
@@ -35,8 +35,8 @@ public class Client {
     // Constructor with cnp
     public Client(String cnp) {
         this.cnp = cnp;
-        this.ronAccount = new Account(Currency.RON, BigDecimal.ZERO);
-        this.euroAccount = new Account(Currency.EUR, BigDecimal.ZERO);
+        this.ronAccount = new Account(Currency.RON, Money.ZERO);
+        this.euroAccount = new Account(Currency.EUR, Money.ZERO);
         this.isMonitored = false;
     }
 
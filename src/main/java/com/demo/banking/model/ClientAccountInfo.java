@@ -0,0 +1,13 @@
+package com.demo.banking.model;
+
+/**
+ * Read model of a client for the account info endpoint: its balances and whether FISC monitors it.
+ * Projected directly by {@code ClientRepository.findAccountInfo}, without loading the entities.
+ */
+public record ClientAccountInfo(String cnp, Money ronBalance, Money euroBalance, boolean monitored) {
+
+    public static ClientAccountInfo of(Client client) {
+        return new ClientAccountInfo(client.getCnp(), client.getRonAccount().getBalance(),
+                client.getEuroAccount().getBalance(), client.isMonitored());
+    }
+}
@@ -0,0 +1,6 @@
+package com.demo.banking.model;
+
+public enum Direction {
+    DEPOSIT,
+    WITHDRAW
+}
@@ -0,0 +1,46 @@
+package com.demo.banking.model;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * RON/EUR rates applied to exchanges between the accounts of a client, as millionths of a RON per EUR.
+ * Immutable, so the rates can be read without locking.
+ *
+ * @param bidMicros   RON credited per EUR sold by the client
+ * @param askMicros   RON debited per EUR bought by the client
+ * @param publishedAt when the rates were published, null for the configured rates, which do not expire
+ */
+public record ExchangeRate(long bidMicros, long askMicros, Instant publishedAt) {
+    private static final long MICROS = 1_000_000;
+
+    public static ExchangeRate of(BigDecimal midRate, BigDecimal spread, Instant publishedAt) {
+        // The spread is split evenly between both sides of the mid rate
+        BigDecimal halfSpread = spread.divide(BigDecimal.valueOf(2));
+        long bid = midRate.multiply(BigDecimal.ONE.subtract(halfSpread)).movePointRight(6).longValue();
+        long ask = midRate.multiply(BigDecimal.ONE.add(halfSpread)).movePointRight(6).longValue();
+        if (bid <= 0 || ask < bid) {
+            throw new IllegalArgumentException("Exchange rate must be positive and the spread between 0 and 2");
+        }
+        return new ExchangeRate(bid, ask, publishedAt);
+    }
+
+    /**
+     * Converts an amount sold in one currency into the amount credited in the other, rounded down to the minor unit
+     *
+     * @throws ArithmeticException if the result overflows
+     */
+    public Money convert(Currency from, Money amount) {
+        long credited = from == Currency.EUR
+                ? Math.multiplyExact(amount.minorUnits(), bidMicros) / MICROS
+                : Math.multiplyExact(amount.minorUnits(), MICROS) / askMicros;
+        return Money.ofMinor(credited);
+    }
+
+    /**
+     * @return RON per EUR applied when selling the given currency
+     */
+    public BigDecimal rateFor(Currency from) {
+        return BigDecimal.valueOf(from == Currency.EUR ? bidMicros : askMicros, 6);
+    }
+}
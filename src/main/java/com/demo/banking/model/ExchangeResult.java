@@ -0,0 +1,11 @@
+package com.demo.banking.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Outcome of an exchange between the RON and EUR accounts of a client
+ *
+ * @param rate RON per EUR applied
+ */
+public record ExchangeResult(String cnp, Currency from, Money debited, Currency to, Money credited, BigDecimal rate) {
+}
@@ -0,0 +1,75 @@
+package com.demo.banking.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+/**
+ * Outcome of a request sent with an {@code Idempotency-Key}, written in the transaction of the mutation it
+ * describes, so a key is recorded if and only if its mutation committed. Rows are deleted after the retention period.
+ */
+@Entity
+@Immutable
+@Table(name = "idempotency_keys", indexes = @Index(name = "idx_idempotency_keys_created", columnList = "createdAt"))
+public class IdempotencyRecord implements Persistable<String> {
+    public static final int MAX_KEY_LENGTH = 64;
+
+    @Id
+    @Column(name = "idempotency_key", length = MAX_KEY_LENGTH)
+    private String key;
+
+    // Operation and parameters the key was first used with, e.g. "deposit 1234567890123 RON 1000.00"
+    @Column(nullable = false, length = 200)
+    private String request;
+
+    @Column(nullable = false)
+    private int status;
+
+    // JSON response body, null when the response had none
+    @Column(length = 4000)
+    private String body;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    // Default constructor required by JPA
+    public IdempotencyRecord() {
+    }
+
+    public IdempotencyRecord(String key, String request, int status, String body, Instant createdAt) {
+        this.key = key;
+        this.request = request;
+        this.status = status;
+        this.body = body;
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String getId() {
+        return key;
+    }
+
+    // Keys are only ever inserted: persist directly instead of merging, and fail on a duplicate key
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+
+    public String getRequest() {
+        return request;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
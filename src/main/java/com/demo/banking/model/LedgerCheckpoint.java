@@ -0,0 +1,54 @@
+package com.demo.banking.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Id of the last ledger entry folded into the balance snapshots, so a snapshot run only reads the entries
+ * recorded after it instead of the whole ledger. A single row, identified by {@link #SNAPSHOTS}.
+ */
+@Entity
+@Table(name = "ledger_checkpoints")
+public class LedgerCheckpoint {
+    public static final String SNAPSHOTS = "balance-snapshots";
+
+    @Id
+    private String name;
+
+    @Column(nullable = false)
+    private long lastEntryId;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+
+    // Default constructor required by JPA
+    public LedgerCheckpoint() {
+    }
+
+    public LedgerCheckpoint(String name, long lastEntryId, Instant updatedAt) {
+        this.name = name;
+        this.lastEntryId = lastEntryId;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getLastEntryId() {
+        return lastEntryId;
+    }
+
+    public void setLastEntryId(long lastEntryId) {
+        this.lastEntryId = lastEntryId;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
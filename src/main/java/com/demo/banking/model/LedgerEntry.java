@@ -0,0 +1,104 @@
+package com.demo.banking.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+import java.time.Instant;
+
+/**
+ * Append-only record of a single balance movement.
+ * Entries are never updated; the sequence is monotonic per account.
+ */
+@Entity
+@Immutable
+@Table(name = "ledger_entries",
+        uniqueConstraints = @UniqueConstraint(name = "uk_ledger_account_sequence", columnNames = {"account_id", "sequence"}))
+public class LedgerEntry {
+    // Pooled sequence so that appends can be grouped into JDBC batches
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ledger_entry_seq")
+    @SequenceGenerator(name = "ledger_entry_seq", sequenceName = "ledger_entry_seq", allocationSize = 100)
+    private Long id;
+
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    @Column(nullable = false)
+    private String cnp;
+
+    @Column(nullable = false)
+    private long sequence;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private LedgerEntryType type;
+
+    // Signed amount, negative for withdrawals and closures
+    @Column(nullable = false)
+    private Money amount;
+
+    @Column(nullable = false)
+    private Money balanceAfter;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    // Default constructor required by JPA
+    public LedgerEntry() {
+    }
+
+    public LedgerEntry(Long accountId, String cnp, long sequence, LedgerEntryType type,
+                       Money amount, Money balanceAfter, Instant createdAt) {
+        this.accountId = accountId;
+        this.cnp = cnp;
+        this.sequence = sequence;
+        this.type = type;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public String getCnp() {
+        return cnp;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public LedgerEntryType getType() {
+        return type;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    public Money getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "LedgerEntry{" +
+                "accountId=" + accountId +
+                ", cnp='" + cnp + '\'' +
+                ", sequence=" + sequence +
+                ", type=" + type +
+                ", amount=" + amount +
+                ", balanceAfter=" + balanceAfter +
+                '}';
+    }
+}
@@ -0,0 +1,8 @@
+package com.demo.banking.model;
+
+public enum LedgerEntryType {
+    DEPOSIT,
+    WITHDRAWAL,
+    EXCHANGE,
+    CLOSURE
+}
@@ -0,0 +1,12 @@
+package com.demo.banking.model;
+
+/**
+ * Sum of the ledger entries of an account recorded after its last snapshot
+ */
+public record LedgerTail(Long accountId, long lastSequence, Money amount) {
+
+    // Used by the grouped query, where the sum comes back as the raw minor units column
+    public LedgerTail(Long accountId, long lastSequence, Long amountMinorUnits) {
+        this(accountId, lastSequence, Money.ofMinor(amountMinorUnits));
+    }
+}
@@ -0,0 +1,52 @@
+package com.demo.banking.model;
+
+/**
+ * Balances of a monitored client as last known by FISC, with the sequence of the notification they came from.
+ * Immutable, so a cached value can be read without locking and replaced atomically.
+ */
+public record MonitoredBalance(Money ronBalance, Money euroBalance, long sequence) {
+
+    /**
+     * @param sequence taken from the notification clock when the balances were read, so notifications of
+     *                 earlier changes still queued are dropped
+     */
+    public static MonitoredBalance of(Client client, long sequence) {
+        return new MonitoredBalance(client.getRonAccount().getBalance(), client.getEuroAccount().getBalance(),
+                sequence);
+    }
+
+    /**
+     * Applies a notification to the cached balances.
+     * <p>
+     * A sequenced notification carries both balances as of its change, so it replaces them as a whole when
+     * it is newer and is ignored otherwise; this keeps the cache correct when notifications arrive out of
+     * order. A notification without a sequence only updates the currencies it reports as changed.
+     *
+     * @return the new balances, or this instance if the notification is stale or changes nothing
+     */
+    public MonitoredBalance apply(BalanceChangeNotification notification) {
+        if (notification.getSequence() != 0) {
+            if (notification.getSequence() <= sequence) {
+                return this;
+            }
+            return new MonitoredBalance(notification.getRonBalance(), notification.getEuroBalance(),
+                    notification.getSequence());
+        }
+
+        if (!notification.isRonChanged() && !notification.isEuroChanged()) {
+            return this;
+        }
+        return new MonitoredBalance(
+                notification.isRonChanged() ? notification.getRonBalance() : ronBalance,
+                notification.isEuroChanged() ? notification.getEuroBalance() : euroBalance,
+                sequence);
+    }
+
+    /**
+     * @return whether these balances already reflect the given notification, i.e. come from the same or a later
+     * one, so applying it changes nothing; a redelivered notification has the same sequence
+     */
+    public boolean supersedes(BalanceChangeNotification notification) {
+        return notification.getSequence() != 0 && notification.getSequence() <= sequence;
+    }
+}
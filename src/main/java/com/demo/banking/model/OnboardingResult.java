@@ -0,0 +1,10 @@
+package com.demo.banking.model;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk onboarding request: how many clients were created, which CNPs were skipped because a
+ * client with that CNP already existed, and which CNPs were not onboarded because the request failed first
+ */
+public record OnboardingResult(int created, List<String> existing, List<String> notOnboarded) {
+}
@@ -0,0 +1,99 @@
+package com.demo.banking.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+/**
+ * Balance change notification waiting to be relayed to FISC.
+ * Rows are written in the transaction of the mutation and deleted once published.
+ */
+@Entity
+@Immutable
+@Table(name = "notification_outbox")
+public class OutboxMessage {
+    // Pooled sequence: ids grow in allocation order, which the relay uses as publishing order
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_seq")
+    @SequenceGenerator(name = "outbox_seq", sequenceName = "outbox_seq", allocationSize = 100)
+    private Long id;
+
+    @Column(nullable = false)
+    private String cnp;
+
+    @Column(nullable = false)
+    private Money ronBalance;
+
+    @Column(nullable = false)
+    private Money euroBalance;
+
+    @Column(nullable = false)
+    private boolean ronChanged;
+
+    @Column(nullable = false)
+    private boolean euroChanged;
+
+    @Column(nullable = false)
+    private long sequence;
+
+    // Epoch millis, carried over to the notification so lag includes the time spent in the outbox
+    @Column(nullable = false)
+    private long createdAt;
+
+    // Default constructor required by JPA
+    public OutboxMessage() {
+    }
+
+    public OutboxMessage(BalanceChangeNotification notification) {
+        this.cnp = notification.getCnp();
+        this.ronBalance = notification.getRonBalance();
+        this.euroBalance = notification.getEuroBalance();
+        this.ronChanged = notification.isRonChanged();
+        this.euroChanged = notification.isEuroChanged();
+        this.sequence = notification.getSequence();
+        this.createdAt = notification.getSentAt();
+    }
+
+    public BalanceChangeNotification toNotification() {
+        BalanceChangeNotification notification = new BalanceChangeNotification();
+        notification.setCnp(cnp);
+        notification.setRonBalance(ronBalance);
+        notification.setEuroBalance(euroBalance);
+        notification.setRonChanged(ronChanged);
+        notification.setEuroChanged(euroChanged);
+        notification.setSequence(sequence);
+        notification.setSentAt(createdAt);
+        return notification;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getCnp() {
+        return cnp;
+    }
+
+    public Money getRonBalance() {
+        return ronBalance;
+    }
+
+    public Money getEuroBalance() {
+        return euroBalance;
+    }
+
+    public boolean isRonChanged() {
+        return ronChanged;
+    }
+
+    public boolean isEuroChanged() {
+        return euroChanged;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+}
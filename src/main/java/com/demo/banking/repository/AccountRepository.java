@@ -2,9 +2,74 @@ package com.demo.banking.repository;
 
 import com.demo.banking.model.Account;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
 public interface AccountRepository extends JpaRepository<Account, Long> {
     // The primary key type is Long because we're using auto-generated IDs
-}
\ No newline at end of file
+
+    // Restricts a statement to the account of a client that is not monitored in the given currency. Both
+    // subqueries are uncorrelated primary key lookups, so the outer statement reads at most two rows instead of
+    // scanning
+    String UNMONITORED_CLIENT_ACCOUNT_SQL = "a.currency = :currency and (" +
+            "a.id = (select c.ron_account_id from clients c where c.cnp = :cnp and c.is_monitored = false) or " +
+            "a.id = (select c.euro_account_id from clients c where c.cnp = :cnp and c.is_monitored = false))";
+
+    // Columns of the updated row read back by the conditional updates
+    String UPDATED_ACCOUNT = "select a.id as \"id\", a.balance as \"balance\", " +
+            "a.ledger_sequence as \"ledgerSequence\" from final table (";
+
+    /**
+     * State of an account right after a conditional update
+     */
+    interface UpdatedAccount {
+        Long getId();
+
+        // Minor units, see Money
+        long getBalance();
+
+        long getLedgerSequence();
+    }
+
+    /**
+     * Adds the amount to the client's account in a single statement, only if the client is not monitored.
+     * The new state is returned by the same statement, an H2 data change delta table ({@code UPDATE ... RETURNING}
+     * elsewhere), which JPQL cannot express.
+     *
+     * @param currency name of the account currency
+     * @param amount   minor units
+     * @return the updated account, empty when the client does not exist, is monitored or the new balance
+     * would overflow
+     */
+    @Query(nativeQuery = true, value = UPDATED_ACCOUNT +
+            "update accounts a set balance = balance + :amount, " +
+            "version = version + 1, ledger_sequence = ledger_sequence + 1 " +
+            "where " + UNMONITORED_CLIENT_ACCOUNT_SQL + " " +
+            "and a.balance <= " + Long.MAX_VALUE + " - :amount) a")
+    Optional<UpdatedAccount> depositIfNotMonitored(@Param("cnp") String cnp, @Param("currency") String currency,
+                                                   @Param("amount") long amount);
+
+    /**
+     * Subtracts the amount from the client's account in a single statement, only if the client is not
+     * monitored and the new balance is either zero or at least the minimum balance. The rules are written as
+     * direct comparisons with the current balance, so {@code minRemaining} is the amount plus the minimum balance.
+     * The new state is returned by the same statement, as for deposits.
+     *
+     * @param currency     name of the account currency
+     * @param amount       minor units
+     * @param minRemaining minor units
+     * @return the updated account, empty when the client does not exist, is monitored or the rules are violated
+     */
+    @Query(nativeQuery = true, value = UPDATED_ACCOUNT +
+            "update accounts a set balance = balance - :amount, " +
+            "version = version + 1, ledger_sequence = ledger_sequence + 1 " +
+            "where " + UNMONITORED_CLIENT_ACCOUNT_SQL + " " +
+            "and (a.balance = :amount or a.balance >= :minRemaining)) a")
+    Optional<UpdatedAccount> withdrawIfNotMonitored(@Param("cnp") String cnp, @Param("currency") String currency,
+                                                    @Param("amount") long amount,
+                                                    @Param("minRemaining") long minRemaining);
+}
@@ -0,0 +1,10 @@
+package com.demo.banking.repository;
+
+import com.demo.banking.model.BalanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BalanceSnapshotRepository extends JpaRepository<BalanceSnapshot, Long> {
+    // The primary key is the account id, there is at most one snapshot per account
+}
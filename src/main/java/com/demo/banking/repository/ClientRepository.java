@@ -1,10 +1,43 @@
 package com.demo.banking.repository;
 
 import com.demo.banking.model.Client;
+import com.demo.banking.model.ClientAccountInfo;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface ClientRepository extends JpaRepository<Client, String> {
     // The primary key type is String because we're using CNP as the ID
-}
\ No newline at end of file
+
+    // Loads clients together with both accounts in a single statement
+    @Query("select c from Client c join fetch c.ronAccount join fetch c.euroAccount where c.cnp in :cnps")
+    List<Client> findAllWithAccounts(@Param("cnps") Collection<String> cnps);
+
+    // Which of the given CNPs already belong to a client, in a single statement
+    @Query("select c.cnp from Client c where c.cnp in :cnps")
+    List<String> findExistingCnps(@Param("cnps") Collection<String> cnps);
+
+    // Balances and monitoring flag of one client, projected from a single join without managing entities
+    @Query("select new com.demo.banking.model.ClientAccountInfo(c.cnp, r.balance, e.balance, c.isMonitored) " +
+            "from Client c join c.ronAccount r join c.euroAccount e where c.cnp = :cnp")
+    Optional<ClientAccountInfo> findAccountInfo(@Param("cnp") String cnp);
+
+    // Next page of the export in CNP order, continuing after the last CNP of the previous page (keyset
+    // pagination on the primary key, so every page is an index range scan regardless of its position)
+    @Query("select new com.demo.banking.model.ClientAccountInfo(c.cnp, r.balance, e.balance, c.isMonitored) " +
+            "from Client c join c.ronAccount r join c.euroAccount e where c.cnp > :afterCnp order by c.cnp")
+    List<ClientAccountInfo> findAccountInfoAfter(@Param("afterCnp") String afterCnp, Limit limit);
+
+    // Next page of monitored clients in CNP order for the FISC warm-up, a range scan of idx_clients_monitored
+    @Query("select new com.demo.banking.model.ClientAccountInfo(c.cnp, r.balance, e.balance, c.isMonitored) " +
+            "from Client c join c.ronAccount r join c.euroAccount e " +
+            "where c.isMonitored = true and c.cnp > :afterCnp order by c.cnp")
+    List<ClientAccountInfo> findMonitoredAfter(@Param("afterCnp") String afterCnp, Limit limit);
+}
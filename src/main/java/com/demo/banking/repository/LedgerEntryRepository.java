@@ -0,0 +1,31 @@
+package com.demo.banking.repository;
+
+import com.demo.banking.model.LedgerEntry;
+import com.demo.banking.model.LedgerTail;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
+
+    // Sum of the movements of one account recorded after the given sequence, in minor units
+    @Query("select coalesce(sum(e.amount), 0) from LedgerEntry e where e.accountId = :accountId and e.sequence > :afterSequence")
+    long sumAfter(@Param("accountId") Long accountId, @Param("afterSequence") long afterSequence);
+
+    // Tails of the accounts with entries after the given id that are newer than their snapshot, in a single
+    // grouped statement reading only those entries; entries already contained in a snapshot are not counted twice
+    @Query("select new com.demo.banking.model.LedgerTail(e.accountId, max(e.sequence), sum(e.amount)) from LedgerEntry e " +
+            "where e.id > :afterId " +
+            "and e.sequence > coalesce((select s.sequence from BalanceSnapshot s where s.accountId = e.accountId), 0) " +
+            "group by e.accountId")
+    List<LedgerTail> findTailsAfter(@Param("afterId") long afterId);
+
+    // Last entry after the given id that was recorded before the given time, null if there is none
+    @Query("select max(e.id) from LedgerEntry e where e.id > :afterId and e.createdAt < :before")
+    Long findLastIdRecordedBefore(@Param("afterId") long afterId, @Param("before") Instant before);
+}
@@ -0,0 +1,27 @@
+package com.demo.banking.repository;
+
+import com.demo.banking.model.OutboxMessage;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    // Oldest pending messages first
+    List<OutboxMessage> findAllByOrderByIdAsc(Limit limit);
+
+    // Removes relayed messages in a single statement; ids are listed explicitly because rows with
+    // lower ids may still be committed after a batch was read
+    @Modifying
+    @Transactional
+    @Query("delete from OutboxMessage m where m.id in :ids")
+    int deleteRelayed(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,109 @@
+package com.demo.banking.service;
+
+import com.demo.banking.metrics.BankingMetrics;
+import com.demo.banking.model.ClientAccountInfo;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of client account views, keyed by CNP.
+ * <p>
+ * Entries are bounded by {@code max-size} and expire {@code ttl-ms} after they were loaded. Every
+ * mutation of a client invalidates its entry once the mutation's transaction commits; invalidating
+ * earlier would let a concurrent read cache the balances that are about to be replaced. A load that
+ * is in progress while the entry is invalidated is not cached, so a view read before the commit
+ * never outlives it.
+ * <p>
+ * Concurrent misses of the same CNP share one load. The load runs on the calling thread outside of
+ * any map lock, so a virtual thread blocked on the database does not pin its carrier thread.
+ */
+@Component
+public class AccountInfoCache {
+
+    private final AsyncCache<String, ClientAccountInfo> cache;
+
+    public AccountInfoCache(BankingMetrics metrics,
+                            @Value("${banking.cache.account-info.max-size:10000}") long maxSize,
+                            @Value("${banking.cache.account-info.ttl-ms:30000}") long ttlMs) {
+        if (maxSize < 0 || ttlMs <= 0) {
+            throw new IllegalArgumentException("Account info cache size must not be negative and TTL must be positive");
+        }
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .buildAsync();
+        metrics.monitorAccountInfoCache(cache);
+    }
+
+    /**
+     * Returns the cached view of the client, loading it on a miss. Failed loads are not cached.
+     */
+    public ClientAccountInfo get(String cnp, Function<String, ClientAccountInfo> loader) {
+        // getIfPresent records the hit or miss, a load in progress counts as a hit
+        CompletableFuture<ClientAccountInfo> cached = cache.getIfPresent(cnp);
+        if (cached == null) {
+            CompletableFuture<ClientAccountInfo> loading = new CompletableFuture<>();
+            cached = cache.asMap().putIfAbsent(cnp, loading);
+            if (cached == null) {
+                return load(cnp, loader, loading);
+            }
+        }
+
+        try {
+            return cached.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Drops the client's entry after the current transaction commits, or right away outside a transaction.
+     */
+    public void invalidate(String cnp) {
+        invalidateAll(List.of(cnp));
+    }
+
+    public void invalidateAll(Collection<String> cnps) {
+        if (cnps.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache.synchronous().invalidateAll(cnps);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cache.synchronous().invalidateAll(cnps);
+            }
+        });
+    }
+
+    private ClientAccountInfo load(String cnp, Function<String, ClientAccountInfo> loader,
+                                   CompletableFuture<ClientAccountInfo> loading) {
+        ClientAccountInfo info;
+        try {
+            info = loader.apply(cnp);
+        } catch (RuntimeException e) {
+            // The cache drops futures that complete exceptionally, waiting readers get the same exception
+            loading.completeExceptionally(e);
+            throw e;
+        }
+        loading.complete(info);
+        return info;
+    }
+}
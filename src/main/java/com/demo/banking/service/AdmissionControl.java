@@ -0,0 +1,265 @@
+package com.demo.banking.service;
+
+import com.demo.banking.metrics.BankingMetrics;
+import com.demo.banking.metrics.BankingMetrics.Shed;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Turns requests away early when the bank cannot keep up, so admitted requests keep a stable latency instead of
+ * every request queueing behind a slow broker.
+ * <ul>
+ *     <li>Client mutations are rate limited per CNP and globally, by token buckets refilled at {@code client-rate}
+ *     and {@code global-rate} per second and holding up to {@code client-burst} and {@code global-burst} requests.
+ *     Requests over a limit are rejected with a {@link RateLimitedException} telling when to retry.</li>
+ *     <li>Once {@code shed-queue-depth} notifications wait to be published, changes of monitored clients are
+ *     rejected with an {@link OverloadedException} by {@link NotificationService} before their notification is
+ *     recorded, rolling their transaction back; changes of other clients add nothing to the backlog and are
+ *     still admitted. The backlog is the queue of the {@code async} publisher, so changes are shed before it
+ *     fills up and notifications are sent on request threads, or the rows of the {@code outbox} as last counted
+ *     by the relay.</li>
+ *     <li>At most {@code publish-window} notifications are sent to the broker on request threads at the same time.
+ *     A request that cannot get a slot within {@code publish-timeout-ms} fails with an {@link OverloadedException},
+ *     rolling its transaction back, instead of holding its transaction and client lock while the broker is slow.</li>
+ * </ul>
+ * Setting a rate, depth or window to {@code 0} disables that limit. The buckets use the generic cell rate
+ * algorithm: each is a single timestamp advanced with compare-and-set, so admitting a request neither locks nor
+ * allocates. Buckets of the {@code max-clients} most recent CNPs are kept; an evicted bucket starts over full.
+ */
+@Component
+public class AdmissionControl {
+    private static final Duration OVERLOAD_RETRY_AFTER = Duration.ofSeconds(1);
+
+    /**
+     * A request turned away by admission control, which the caller may send again after {@link #getRetryAfter()}
+     */
+    public abstract static class RejectedException extends RuntimeException {
+        private final Duration retryAfter;
+
+        protected RejectedException(String message, Duration retryAfter) {
+            super(message);
+            this.retryAfter = retryAfter;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    /**
+     * The client, or all clients together, sent more requests than their rate limit allows
+     */
+    public static class RateLimitedException extends RejectedException {
+        public RateLimitedException(String message, Duration retryAfter) {
+            super(message, retryAfter);
+        }
+    }
+
+    /**
+     * The notification pipeline is saturated
+     */
+    public static class OverloadedException extends RejectedException {
+        public OverloadedException(String message) {
+            super(message, OVERLOAD_RETRY_AFTER);
+        }
+    }
+
+    private final BankingMetrics metrics;
+    private final RateLimit global;
+    private final Cache<String, RateLimit> clients;
+    private final int clientRate;
+    private final int clientBurst;
+    private final int shedQueueDepth;
+    private final Semaphore publishPermits;
+    private final long publishTimeoutNanos;
+
+    private volatile LongSupplier publishBacklog;
+
+    public AdmissionControl(BankingMetrics metrics,
+                            @Value("${banking.admission.global-rate:5000}") int globalRate,
+                            @Value("${banking.admission.global-burst:1000}") int globalBurst,
+                            @Value("${banking.admission.client-rate:20}") int clientRate,
+                            @Value("${banking.admission.client-burst:10}") int clientBurst,
+                            @Value("${banking.admission.max-clients:100000}") long maxClients,
+                            @Value("${banking.admission.shed-queue-depth:8000}") int shedQueueDepth,
+                            @Value("${banking.admission.publish-window:64}") int publishWindow,
+                            @Value("${banking.admission.publish-timeout-ms:100}") long publishTimeoutMs) {
+        if (globalRate < 0 || clientRate < 0 || shedQueueDepth < 0 || publishWindow < 0 || publishTimeoutMs < 0
+                || maxClients < 0 || (globalRate > 0 && globalBurst <= 0) || (clientRate > 0 && clientBurst <= 0)) {
+            throw new IllegalArgumentException("Admission limits must not be negative and bursts of enabled rate limits must be positive");
+        }
+
+        this.metrics = metrics;
+        this.global = globalRate > 0 ? new RateLimit(globalRate, globalBurst, System.nanoTime()) : null;
+        this.clientRate = clientRate;
+        this.clientBurst = clientBurst;
+        this.clients = clientRate > 0
+                ? Caffeine.newBuilder()
+                        .maximumSize(maxClients)
+                        // An idle bucket is full again after a whole burst worth of time, forgetting it loses nothing
+                        .expireAfterAccess(Duration.ofNanos(RateLimit.intervalNanos(clientRate) * (clientBurst + 1L)))
+                        .build()
+                : null;
+        this.shedQueueDepth = shedQueueDepth;
+        this.publishPermits = publishWindow > 0 ? new Semaphore(publishWindow) : null;
+        this.publishTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(publishTimeoutMs);
+
+        metrics.monitorAdmissionLimit("global-rate", globalRate);
+        metrics.monitorAdmissionLimit("client-rate", clientRate);
+        metrics.monitorAdmissionLimit("shed-queue-depth", shedQueueDepth);
+        metrics.monitorAdmissionLimit("publish-window", publishWindow);
+        if (publishPermits != null) {
+            metrics.monitorPublishWindow(publishPermits, publishWindow);
+        }
+    }
+
+    /**
+     * Number of notifications waiting to be published, which decides when changes of monitored clients are
+     * shed. Must be cheap, it is read for every notification.
+     */
+    public void monitorPublishBacklog(LongSupplier backlog) {
+        this.publishBacklog = backlog;
+    }
+
+    /**
+     * Admits a client mutation or rejects it.
+     *
+     * @param cnp client the request mutates, or null for requests spanning several clients, which only count
+     *            against the global limit
+     * @throws RateLimitedException if the client or all clients together are over their rate limit
+     */
+    public void admit(String cnp) {
+        long now = System.nanoTime();
+        RateLimit client = clients == null || cnp == null
+                ? null
+                : clients.get(cnp, key -> new RateLimit(clientRate, clientBurst, now));
+        if (client != null) {
+            long wait = client.tryAcquire(now);
+            if (wait > 0) {
+                metrics.recordShed(Shed.CLIENT_RATE);
+                throw new RateLimitedException("Too many requests for client " + cnp + ", please retry later",
+                        Duration.ofNanos(wait));
+            }
+        }
+        if (global != null) {
+            long wait = global.tryAcquire(now);
+            if (wait > 0) {
+                if (client != null) {
+                    // The request is not admitted, so it does not count against the client
+                    client.release();
+                }
+                metrics.recordShed(Shed.GLOBAL_RATE);
+                throw new RateLimitedException("Too many requests, please retry later", Duration.ofNanos(wait));
+            }
+        }
+    }
+
+    /**
+     * Checks whether a notification may be added to the backlog, within the transaction of the change.
+     *
+     * @throws OverloadedException if too many notifications are waiting to be published
+     */
+    public void checkPublishBacklog() {
+        LongSupplier backlog = publishBacklog;
+        if (shedQueueDepth > 0 && backlog != null && backlog.getAsLong() >= shedQueueDepth) {
+            metrics.recordShed(Shed.NOTIFICATION_QUEUE);
+            throw new OverloadedException("Too many balance changes are waiting to be reported, please retry later");
+        }
+    }
+
+    /**
+     * Publishes on a request thread, within the transaction of the change.
+     *
+     * @throws OverloadedException if no publish slot frees up within {@code publish-timeout-ms}
+     */
+    public void publish(Runnable send) {
+        if (publishPermits == null) {
+            send.run();
+            return;
+        }
+
+        boolean acquired;
+        try {
+            acquired = publishPermits.tryAcquire(publishTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            metrics.recordShed(Shed.PUBLISH_WINDOW);
+            throw new OverloadedException("Balance changes cannot be reported at the moment, please retry later");
+        }
+        try {
+            send.run();
+        } finally {
+            publishPermits.release();
+        }
+    }
+
+    /**
+     * Publishes a change that is already committed on a request thread, waiting as long as it takes for a
+     * publish slot since the change can no longer be rejected.
+     */
+    public void publishCommitted(Runnable send) {
+        if (publishPermits == null) {
+            send.run();
+            return;
+        }
+
+        publishPermits.acquireUninterruptibly();
+        try {
+            send.run();
+        } finally {
+            publishPermits.release();
+        }
+    }
+
+    /**
+     * Token bucket as a theoretical arrival time: the time at which the bucket would be full again. A request
+     * advances it by one emission interval and is admitted while it stays within a burst of intervals from now.
+     */
+    private static final class RateLimit {
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final AtomicLong theoreticalArrival;
+
+        RateLimit(int ratePerSecond, int burst, long nowNanos) {
+            this.intervalNanos = intervalNanos(ratePerSecond);
+            this.toleranceNanos = intervalNanos * burst;
+            this.theoreticalArrival = new AtomicLong(nowNanos);
+        }
+
+        static long intervalNanos(int ratePerSecond) {
+            return Math.max(1, TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        }
+
+        /**
+         * @return 0 if the request is admitted, otherwise the nanoseconds until it would be
+         */
+        long tryAcquire(long nowNanos) {
+            while (true) {
+                long current = theoreticalArrival.get();
+                long next = Math.max(current, nowNanos) + intervalNanos;
+                long excess = next - nowNanos - toleranceNanos;
+                if (excess > 0) {
+                    return excess;
+                }
+                if (theoreticalArrival.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        void release() {
+            theoreticalArrival.addAndGet(-intervalNanos);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.demo.banking.service;
+
+import com.demo.banking.model.BalanceAnalytics;
+import com.demo.banking.model.BalanceAnalytics.Bucket;
+import com.demo.banking.model.BalanceAnalytics.Scope;
+import com.demo.banking.model.BalanceAnalytics.TopBalance;
+import com.demo.banking.model.Currency;
+import com.demo.banking.model.Money;
+import com.demo.banking.model.MonitoredBalance;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals, balance histograms and largest balances per currency, across all accounts or the accounts of
+ * monitored clients only, so balance analytics are answered without reading the accounts.
+ * <p>
+ * The {@link Scope#ALL} aggregates are updated from every balance movement recorded by the bank, once its
+ * transaction commits, and from accounts being opened and closed. The {@link Scope#MONITORED} aggregates are
+ * updated from the changes FISC applies to its cache. An update adds and removes counts and sums, so it costs a
+ * few atomic additions regardless of the number of clients; a query reads 64 histogram buckets and at most
+ * {@code top-k} balances.
+ * <p>
+ * Histogram bucket {@code n > 0} counts the balances of {@code 2^(n-1)} to {@code 2^n - 1} minor units, bucket 0
+ * the empty accounts. The largest balances are kept in a bounded set of twice {@code top-k} entries; every account
+ * outside of it has at most the balance of the last entry evicted. An entry whose balance drops below that bound
+ * is let go, so the set can shrink below {@code top-k} until the next reconciliation fills it again.
+ * <p>
+ * Aggregates are rebuilt periodically by {@link BalanceAggregatesReconciler}. Changes made while a rebuild
+ * scans are applied to the new aggregates as well once the scan has passed their client, so the rebuilt
+ * aggregates replace the running ones without losing them.
+ */
+@Component
+public class BalanceAggregates {
+    private static final int BUCKETS = Long.SIZE;
+
+    private final int topK;
+    private final Map<Scope, ScopeAggregates> scopes = new EnumMap<>(Scope.class);
+
+    public BalanceAggregates(@Value("${banking.analytics.top-k:10}") int topK) {
+        if (topK <= 0) {
+            throw new IllegalArgumentException("Analytics top-k must be positive");
+        }
+
+        this.topK = topK;
+        for (Scope scope : Scope.values()) {
+            scopes.put(scope, new ScopeAggregates(scope));
+        }
+    }
+
+    /**
+     * Counts the empty accounts of a new client once the current transaction commits
+     */
+    public void recordOpened(String cnp) {
+        for (Currency currency : Currency.values()) {
+            recordBalanceChange(cnp, currency, null, Money.ZERO);
+        }
+    }
+
+    /**
+     * Removes the accounts of a closed client once the current transaction commits; accounts are only closed
+     * when empty
+     */
+    public void recordClosed(String cnp) {
+        for (Currency currency : Currency.values()) {
+            recordBalanceChange(cnp, currency, Money.ZERO, null);
+        }
+    }
+
+    /**
+     * Applies a balance movement of the bank once the current transaction commits, or right away outside a
+     * transaction. Changes of one transaction are applied in the order they were recorded.
+     *
+     * @param before balance before the movement, null for a new account
+     * @param after  balance after the movement, null for a closed account
+     */
+    public void recordBalanceChange(String cnp, Currency currency, Money before, Money after) {
+        Change change = new Change(cnp, currency, before, after);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            scopes.get(Scope.ALL).apply(change);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Change> pending = (List<Change>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<Change> changes = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ScopeAggregates all = scopes.get(Scope.ALL);
+                    for (Change committed : changes) {
+                        all.apply(committed);
+                    }
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(BalanceAggregates.this);
+                }
+            });
+            pending = changes;
+        }
+        pending.add(change);
+    }
+
+    /**
+     * Applies a change of the FISC cache
+     *
+     * @param before cached balances before the change, null if the client was not monitored
+     * @param after  cached balances after the change, null if the client is no longer monitored
+     */
+    public void recordMonitoredChange(String cnp, MonitoredBalance before, MonitoredBalance after) {
+        if (before == after) {
+            return;
+        }
+
+        ScopeAggregates monitored = scopes.get(Scope.MONITORED);
+        monitored.apply(new Change(cnp, Currency.RON,
+                before != null ? before.ronBalance() : null, after != null ? after.ronBalance() : null));
+        monitored.apply(new Change(cnp, Currency.EUR,
+                before != null ? before.euroBalance() : null, after != null ? after.euroBalance() : null));
+    }
+
+    /**
+     * @param top number of largest balances to return, at most {@code top-k}
+     */
+    public BalanceAnalytics getAnalytics(Scope scope, Currency currency, int top) {
+        if (top < 0 || top > topK) {
+            throw new IllegalArgumentException("Number of top balances must be between 0 and " + topK);
+        }
+
+        ScopeAggregates aggregates = scopes.get(scope);
+        Aggregate aggregate = aggregates.generation.live().get(currency);
+        List<Bucket> histogram = new ArrayList<>();
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            long accounts = aggregate.buckets.get(bucket);
+            if (accounts != 0) {
+                histogram.add(new Bucket(lowestOf(bucket), bucket == BUCKETS - 1 ? Money.ofMinor(Long.MAX_VALUE)
+                        : lowestOf(bucket + 1), accounts));
+            }
+        }
+        return new BalanceAnalytics(scope, currency, aggregate.accounts.sum(), Money.ofMinor(aggregate.total.sum()),
+                histogram, aggregate.top.get(top), aggregates.reconciledAt);
+    }
+
+    /**
+     * Starts rebuilding the aggregates of a scope. The caller adds every client in increasing CNP order,
+     * reporting its progress, and finishes the rebuild to replace the running aggregates.
+     *
+     * @throws IllegalStateException if the scope is already being rebuilt
+     */
+    public Rebuild startRebuild(Scope scope) {
+        ScopeAggregates aggregates = scopes.get(scope);
+        synchronized (aggregates) {
+            Generation current = aggregates.generation;
+            if (current.rebuild() != null) {
+                throw new IllegalStateException("Analytics of scope " + scope + " are already being rebuilt");
+            }
+            Rebuild rebuild = new Rebuild(aggregates);
+            aggregates.generation = new Generation(current.live(), rebuild);
+            return rebuild;
+        }
+    }
+
+    static int bucketOf(long minorUnits) {
+        return minorUnits <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(minorUnits);
+    }
+
+    private static Money lowestOf(int bucket) {
+        return Money.ofMinor(bucket == 0 ? 0 : 1L << (bucket - 1));
+    }
+
+    private Map<Currency, Aggregate> newAggregates() {
+        Map<Currency, Aggregate> aggregates = new EnumMap<>(Currency.class);
+        for (Currency currency : Currency.values()) {
+            aggregates.put(currency, new Aggregate(2 * topK));
+        }
+        return aggregates;
+    }
+
+    /**
+     * New aggregates of a scope being filled from its source.
+     */
+    public final class Rebuild {
+        private final ScopeAggregates scope;
+        private final Map<Currency, Aggregate> aggregates = newAggregates();
+        // Clients up to this CNP have been added, later changes of theirs are applied here too
+        private volatile String scannedThrough = "";
+        // Clients the scan will add, null if it reads a source that shows clients created meanwhile
+        private volatile Set<String> scanned;
+        private int clients;
+
+        private Rebuild(ScopeAggregates scope) {
+            this.scope = scope;
+        }
+
+        /**
+         * Restricts the scan to a set of clients taken after the rebuild started. Changes of clients outside
+         * of it are applied right away, since the scan will not add them.
+         */
+        public void scanning(Set<String> cnps) {
+            scanned = cnps;
+        }
+
+        public void add(String cnp, Money ronBalance, Money euroBalance) {
+            aggregates.get(Currency.RON).update(cnp, null, ronBalance);
+            aggregates.get(Currency.EUR).update(cnp, null, euroBalance);
+            clients++;
+        }
+
+        /**
+         * Reports that every client up to this CNP has been added
+         */
+        public void scannedThrough(String cnp) {
+            scannedThrough = cnp;
+        }
+
+        /**
+         * Replaces the running aggregates with the rebuilt ones, logging how far they had drifted
+         *
+         * @return number of clients added
+         */
+        public int finish() {
+            synchronized (scope) {
+                Generation current = scope.generation;
+                for (Currency currency : Currency.values()) {
+                    Aggregate running = current.live().get(currency);
+                    Aggregate rebuilt = aggregates.get(currency);
+                    long accountDrift = running.accounts.sum() - rebuilt.accounts.sum();
+                    long totalDrift = running.total.sum() - rebuilt.total.sum();
+                    if (accountDrift != 0 || totalDrift != 0) {
+                        System.out.println("FISC: Corrected " + scope.scope + " " + currency + " analytics off by "
+                                + accountDrift + " accounts and " + Money.ofMinor(totalDrift));
+                    }
+                }
+                // Changes still applying to the previous generation reach these aggregates through the rebuild
+                scannedThrough = null;
+                scope.generation = new Generation(aggregates, null);
+                scope.reconciledAt = Instant.now();
+            }
+            return clients;
+        }
+
+        /**
+         * Drops the rebuild after a failed scan, keeping the running aggregates
+         */
+        public void abort() {
+            synchronized (scope) {
+                if (scope.generation.rebuild() == this) {
+                    scope.generation = new Generation(scope.generation.live(), null);
+                }
+            }
+        }
+
+        private boolean covers(String cnp) {
+            String through = scannedThrough;
+            if (through == null || cnp.compareTo(through) <= 0) {
+                return true;
+            }
+            Set<String> cnps = scanned;
+            return cnps != null && !cnps.contains(cnp);
+        }
+    }
+
+    private record Change(String cnp, Currency currency, Money before, Money after) {
+    }
+
+    private record Generation(Map<Currency, Aggregate> live, Rebuild rebuild) {
+    }
+
+    private final class ScopeAggregates {
+        private final Scope scope;
+        private volatile Generation generation = new Generation(newAggregates(), null);
+        private volatile Instant reconciledAt;
+
+        private ScopeAggregates(Scope scope) {
+            this.scope = scope;
+        }
+
+        private void apply(Change change) {
+            Generation current = generation;
+            current.live().get(change.currency()).update(change.cnp(), change.before(), change.after());
+            Rebuild rebuild = current.rebuild();
+            if (rebuild != null && rebuild.covers(change.cnp())) {
+                rebuild.aggregates.get(change.currency()).update(change.cnp(), change.before(), change.after());
+            }
+        }
+    }
+
+    private static final class Aggregate {
+        private final LongAdder accounts = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final TopBalances top;
+
+        private Aggregate(int topCapacity) {
+            this.top = new TopBalances(topCapacity);
+        }
+
+        private void update(String cnp, Money before, Money after) {
+            if (before != null) {
+                accounts.decrement();
+                total.add(-before.minorUnits());
+                buckets.decrementAndGet(bucketOf(before.minorUnits()));
+            }
+            if (after != null) {
+                accounts.increment();
+                total.add(after.minorUnits());
+                buckets.incrementAndGet(bucketOf(after.minorUnits()));
+            }
+            top.update(cnp, after);
+        }
+    }
+
+    private static final class TopBalances {
+        private record Entry(long balance, String cnp) {
+        }
+
+        private static final Comparator<Entry> LARGEST_FIRST =
+                Comparator.comparingLong(Entry::balance).reversed().thenComparing(Entry::cnp);
+
+        private final int capacity;
+        private final TreeSet<Entry> entries = new TreeSet<>(LARGEST_FIRST);
+        // Read without the lock to skip the common case of an untracked account staying untracked
+        private final Map<String, Long> balances = new ConcurrentHashMap<>();
+        // Every account not tracked here has a balance of at most this
+        private volatile long floor = Long.MIN_VALUE;
+
+        private TopBalances(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private void update(String cnp, Money balance) {
+            if ((balance == null || balance.minorUnits() <= floor) && !balances.containsKey(cnp)) {
+                return;
+            }
+
+            synchronized (this) {
+                Long previous = balances.remove(cnp);
+                if (previous != null) {
+                    entries.remove(new Entry(previous, cnp));
+                }
+                if (balance == null) {
+                    return;
+                }
+
+                long value = balance.minorUnits();
+                if (previous == null ? value <= floor : value < floor) {
+                    return;
+                }
+                entries.add(new Entry(value, cnp));
+                balances.put(cnp, value);
+                if (entries.size() > capacity) {
+                    Entry evicted = entries.pollLast();
+                    balances.remove(evicted.cnp());
+                    floor = Math.max(floor, evicted.balance());
+                }
+            }
+        }
+
+        private synchronized List<TopBalance> get(int limit) {
+            List<TopBalance> top = new ArrayList<>(Math.min(limit, entries.size()));
+            for (Entry entry : entries) {
+                if (top.size() == limit) {
+                    break;
+                }
+                top.add(new TopBalance(entry.cnp(), Money.ofMinor(entry.balance())));
+            }
+            return top;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.demo.banking.service;
+
+import com.demo.banking.metrics.FiscMetrics;
+import com.demo.banking.model.BalanceAnalytics.Scope;
+import com.demo.banking.model.ClientAccountInfo;
+import com.demo.banking.model.MonitoredBalance;
+import com.demo.banking.repository.ClientRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rebuilds the {@link BalanceAggregates} from their sources at startup and every {@code reconcile-interval-ms},
+ * correcting whatever the running updates missed, e.g. changes made directly in the database.
+ * <p>
+ * All accounts are read from the database in keyset pages of {@code page-size}, the same way as the export.
+ * The monitored scope is rebuilt from the FISC cache, which the monitored aggregates describe: it is loaded from
+ * the database at startup and trails it by the notification delay, so reading the database instead would count
+ * the notifications still on their way twice.
+ */
+@Component
+public class BalanceAggregatesReconciler {
+    private final ClientRepository clientRepository;
+    private final FiscService fiscService;
+    private final BalanceAggregates aggregates;
+    private final FiscMetrics metrics;
+    private final int pageSize;
+
+    public BalanceAggregatesReconciler(ClientRepository clientRepository,
+                                       FiscService fiscService,
+                                       BalanceAggregates aggregates,
+                                       FiscMetrics metrics,
+                                       @Value("${banking.analytics.page-size:5000}") int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Analytics page size must be positive");
+        }
+
+        this.clientRepository = clientRepository;
+        this.fiscService = fiscService;
+        this.aggregates = aggregates;
+        this.metrics = metrics;
+        this.pageSize = pageSize;
+    }
+
+    @Scheduled(fixedDelayString = "${banking.analytics.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        long start = System.nanoTime();
+        int clients = reconcileAll();
+        int monitored = reconcileMonitored();
+        metrics.recordAnalyticsReconciled(start);
+        System.out.println("FISC: Reconciled balance analytics of " + clients + " clients, " + monitored
+                + " monitored, in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * @return number of clients read from the database
+     */
+    public int reconcileAll() {
+        BalanceAggregates.Rebuild rebuild = aggregates.startRebuild(Scope.ALL);
+        try {
+            String afterCnp = "";
+            List<ClientAccountInfo> page;
+            do {
+                page = clientRepository.findAccountInfoAfter(afterCnp, Limit.of(pageSize));
+                for (ClientAccountInfo info : page) {
+                    rebuild.add(info.cnp(), info.ronBalance(), info.euroBalance());
+                }
+                if (!page.isEmpty()) {
+                    afterCnp = page.get(page.size() - 1).cnp();
+                    rebuild.scannedThrough(afterCnp);
+                }
+            } while (page.size() == pageSize);
+        } catch (RuntimeException e) {
+            rebuild.abort();
+            throw e;
+        }
+        return rebuild.finish();
+    }
+
+    /**
+     * @return number of clients read from the FISC cache
+     */
+    public int reconcileMonitored() {
+        BalanceAggregates.Rebuild rebuild = aggregates.startRebuild(Scope.MONITORED);
+        try {
+            // Clients monitored from now on are counted by their updates, the scan only adds those present now
+            Map<String, MonitoredBalance> cache = fiscService.getMonitoredBalances();
+            List<String> cnps = new ArrayList<>(cache.keySet());
+            rebuild.scanning(new HashSet<>(cnps));
+            cnps.sort(null);
+            for (String cnp : cnps) {
+                MonitoredBalance balance = cache.get(cnp);
+                if (balance != null) {
+                    rebuild.add(cnp, balance.ronBalance(), balance.euroBalance());
+                }
+                rebuild.scannedThrough(cnp);
+            }
+        } catch (RuntimeException e) {
+            rebuild.abort();
+            throw e;
+        }
+        return rebuild.finish();
+    }
+}
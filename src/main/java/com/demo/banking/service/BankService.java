@@ -1,33 +1,104 @@
 package com.demo.banking.service;
 
+import com.demo.banking.metrics.BankingMetrics;
+import com.demo.banking.metrics.BankingMetrics.Operation;
+import com.demo.banking.metrics.BankingMetrics.Outcome;
 import com.demo.banking.model.Account;
+import com.demo.banking.model.BatchOperation;
+import com.demo.banking.model.BatchOperationResult;
 import com.demo.banking.model.Client;
+import com.demo.banking.model.ClientAccountInfo;
 import com.demo.banking.model.Currency;
+import com.demo.banking.model.Direction;
+import com.demo.banking.model.ExchangeRate;
+import com.demo.banking.model.ExchangeResult;
+import com.demo.banking.model.LedgerEntryType;
+import com.demo.banking.model.Money;
+import com.demo.banking.model.OnboardingResult;
 import com.demo.banking.repository.AccountRepository;
+import com.demo.banking.repository.AccountRepository.UpdatedAccount;
 import com.demo.banking.repository.ClientRepository;
+import jakarta.persistence.EntityManager;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-
-import java.math.BigDecimal;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
 @Service
 @Transactional
 public class BankService {
+    // Maximum number of CNPs loaded by a single IN query when processing batches
+    private static final int BATCH_LOAD_CHUNK_SIZE = 1000;
+
+    // Reason reported when an amount or balance overflows the minor units of Money
+    public static final String OUT_OF_RANGE = "Amount or resulting balance is out of the supported range";
+
+    /**
+     * Thrown when bulk onboarding stops at a chunk that could not be committed; the clients of earlier chunks
+     * stay onboarded and are reported by the partial result
+     */
+    public static class OnboardingException extends RuntimeException {
+        private final OnboardingResult result;
+
+        OnboardingException(OnboardingResult result, RuntimeException cause) {
+            super("Onboarding stopped after " + result.created() + " clients: " + cause.getMessage(), cause);
+            this.result = result;
+        }
+
+        public OnboardingResult getResult() {
+            return result;
+        }
+    }
+
+    private final EntityManager entityManager;
     private final ClientRepository clientRepository;
     private final AccountRepository accountRepository;
     private final FiscService fiscService;
     private final NotificationService notificationService;
-
-    public BankService(ClientRepository clientRepository, AccountRepository accountRepository,
-                       FiscService fiscService, NotificationService notificationService) {
+    private final LedgerService ledgerService;
+    private final AccountInfoCache accountInfoCache;
+    private final BalanceAggregates aggregates;
+    private final ExchangeRates exchangeRates;
+    private final BankingMetrics metrics;
+    private final TransactionTemplate transactionTemplate;
+
+    public BankService(EntityManager entityManager, ClientRepository clientRepository, AccountRepository accountRepository,
+                       FiscService fiscService, NotificationService notificationService,
+                       LedgerService ledgerService, AccountInfoCache accountInfoCache, BalanceAggregates aggregates,
+                       ExchangeRates exchangeRates, BankingMetrics metrics, PlatformTransactionManager transactionManager) {
+        this.entityManager = entityManager;
         this.clientRepository = clientRepository;
         this.accountRepository = accountRepository;
         this.fiscService = fiscService;
         this.notificationService = notificationService;
+        this.ledgerService = ledgerService;
+        this.accountInfoCache = accountInfoCache;
+        this.aggregates = aggregates;
+        this.exchangeRates = exchangeRates;
+        this.metrics = metrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     // Client operations
     public Client createAccounts(String cnp) {
+        return timed(Operation.CREATE_ACCOUNTS, null, () -> doCreateAccounts(cnp));
+    }
+
+    private Client doCreateAccounts(String cnp) {
         if (clientRepository.existsById(cnp)) {
             throw new IllegalArgumentException("Client with CNP " + cnp + " already exists");
         }
@@ -37,16 +108,88 @@ public class BankService {
         // Save accounts first to get their IDs
         client.setRonAccount(accountRepository.save(client.getRonAccount()));
         client.setEuroAccount(accountRepository.save(client.getEuroAccount()));
+        aggregates.recordOpened(cnp);
 
         // Then save the client with the account references
         return clientRepository.save(client);
     }
 
+    /**
+     * Creates clients with empty accounts for every new CNP. CNPs that already belong to a client, or repeat
+     * within the request, are skipped, so a request can be resent after a failure.
+     * <p>
+     * CNPs are handled in chunks, each committed in its own transaction: one IN query finds the existing ones,
+     * the new clients and their accounts are persisted with ids taken from the pooled account sequence, and the
+     * chunk is flushed as JDBC batch inserts and cleared from the persistence context, so neither memory use
+     * nor the length of a transaction grows with the request.
+     *
+     * @throws OnboardingException if a chunk fails, with the clients onboarded by the committed chunks
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public OnboardingResult onboardClients(List<String> cnps) {
+        return timed(Operation.ONBOARD_CLIENTS, null, () -> doOnboardClients(cnps));
+    }
+
+    private OnboardingResult doOnboardClients(List<String> cnps) {
+        Set<String> distinctCnps = new LinkedHashSet<>(cnps.size() * 2);
+        for (String cnp : cnps) {
+            if (cnp == null || cnp.isBlank()) {
+                throw new IllegalArgumentException("CNP must not be empty");
+            }
+            distinctCnps.add(cnp);
+        }
+
+        List<String> ordered = new ArrayList<>(distinctCnps);
+        List<String> existing = new ArrayList<>();
+        int created = 0;
+        for (int from = 0; from < ordered.size(); from += BATCH_LOAD_CHUNK_SIZE) {
+            List<String> chunk = ordered.subList(from, Math.min(from + BATCH_LOAD_CHUNK_SIZE, ordered.size()));
+            List<String> existingInChunk;
+            try {
+                existingInChunk = transactionTemplate.execute(status -> onboardChunk(chunk));
+            } catch (RuntimeException e) {
+                OnboardingResult partial = new OnboardingResult(created, existing,
+                        List.copyOf(ordered.subList(from, ordered.size())));
+                System.out.println("BANK: Onboarding failed after " + created + " clients, "
+                        + partial.notOnboarded().size() + " CNPs not onboarded: " + e.getMessage());
+                throw new OnboardingException(partial, e);
+            }
+            existing.addAll(existingInChunk);
+            created += chunk.size() - existingInChunk.size();
+        }
+
+        System.out.println("BANK: Onboarded " + created + " clients, skipped " + existing.size() + " existing");
+        return new OnboardingResult(created, existing, List.of());
+    }
+
+    // Persists the new clients of one chunk, returning the CNPs that already exist
+    private List<String> onboardChunk(List<String> chunk) {
+        Set<String> existingInChunk = new HashSet<>(clientRepository.findExistingCnps(chunk));
+        List<String> existing = new ArrayList<>(existingInChunk.size());
+        for (String cnp : chunk) {
+            if (existingInChunk.contains(cnp)) {
+                existing.add(cnp);
+            } else {
+                // Persist directly: the CNP is an assigned id, so save() would merge and select every client first
+                entityManager.persist(new Client(cnp));
+                aggregates.recordOpened(cnp);
+            }
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+        return existing;
+    }
+
     public void closeAccounts(String cnp) {
+        timed(Operation.CLOSE_ACCOUNTS, null, () -> doCloseAccounts(cnp));
+    }
+
+    private void doCloseAccounts(String cnp) {
         Client client = getClient(cnp);
 
         // Check if both accounts have zero balance
-        if (client.getRonAccount().getBalance().compareTo(BigDecimal.ZERO) != 0 || client.getEuroAccount().getBalance().compareTo(BigDecimal.ZERO) != 0) {
+        if (!client.getRonAccount().getBalance().isZero() || !client.getEuroAccount().getBalance().isZero()) {
             throw new IllegalStateException("Cannot close accounts with non-zero balance");
         }
 
@@ -57,22 +200,39 @@ public class BankService {
 
         // Remove client (cascade will also remove associated accounts)
         clientRepository.deleteById(cnp);
+        aggregates.recordClosed(cnp);
+        accountInfoCache.invalidate(cnp);
+    }
+
+    public void deposit(String cnp, Currency currency, Money amount) {
+        timed(Operation.DEPOSIT, currency, () -> doDeposit(cnp, currency, amount));
     }
 
-    public void deposit(String cnp, Currency currency, BigDecimal amount) {
-        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+    private void doDeposit(String cnp, Currency currency, Money amount) {
+        if (!amount.isPositive()) {
             throw new IllegalArgumentException("Deposit amount must be positive");
         }
+        accountInfoCache.invalidate(cnp);
+
+        // Fast path: a single conditional UPDATE for clients that are not monitored
+        Optional<UpdatedAccount> updated = accountRepository.depositIfNotMonitored(cnp, currency.name(),
+                amount.minorUnits());
+        if (updated.isPresent()) {
+            recordAppliedUpdate(cnp, currency, LedgerEntryType.DEPOSIT, amount, updated.get());
+            return;
+        }
 
+        // Monitored or unknown client, or balance overflow: load it, apply the change and notify
         Client client = getClient(cnp);
         Account account = getAccountByCurrency(client, currency);
 
         // Store previous balances for notification
-        BigDecimal previousRonBalance = client.getRonAccount().getBalance();
-        BigDecimal previousEuroBalance = client.getEuroAccount().getBalance();
+        Money previousRonBalance = client.getRonAccount().getBalance();
+        Money previousEuroBalance = client.getEuroAccount().getBalance();
 
         // Update balance
-        account.setBalance(account.getBalance().add(amount));
+        account.setBalance(account.getBalance().plus(amount));
+        ledgerService.record(cnp, account, LedgerEntryType.DEPOSIT, amount);
 
         // Save the updated account
         accountRepository.save(account);
@@ -83,32 +243,40 @@ public class BankService {
         }
     }
 
-    public void withdraw(String cnp, Currency currency, BigDecimal amount) {
-        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+    public void withdraw(String cnp, Currency currency, Money amount) {
+        timed(Operation.WITHDRAW, currency, () -> doWithdraw(cnp, currency, amount));
+    }
+
+    private void doWithdraw(String cnp, Currency currency, Money amount) {
+        if (!amount.isPositive()) {
             throw new IllegalArgumentException("Withdrawal amount must be positive");
         }
+        accountInfoCache.invalidate(cnp);
+
+        // Fast path: a single conditional UPDATE enforcing the balance rules for clients that are not monitored
+        Optional<UpdatedAccount> updated = accountRepository.withdrawIfNotMonitored(cnp, currency.name(),
+                amount.minorUnits(), amount.plus(Account.MIN_BALANCE).minorUnits());
+        if (updated.isPresent()) {
+            recordAppliedUpdate(cnp, currency, LedgerEntryType.WITHDRAWAL, amount.negate(), updated.get());
+            return;
+        }
 
+        // Monitored or unknown client, or rules violated: re-check on the loaded client to report the reason
         Client client = getClient(cnp);
         Account account = getAccountByCurrency(client, currency);
 
         // Store previous balances for notification
-        BigDecimal previousRonBalance = client.getRonAccount().getBalance();
-        BigDecimal previousEuroBalance = client.getEuroAccount().getBalance();
+        Money previousRonBalance = client.getRonAccount().getBalance();
+        Money previousEuroBalance = client.getEuroAccount().getBalance();
 
-        BigDecimal newBalance = account.getBalance().subtract(amount);
+        Money newBalance = account.getBalance().minus(amount);
 
         // Check minimum balance requirement
-        if (newBalance.compareTo(BigDecimal.ZERO) < 0) {
-            throw new IllegalStateException("Account balance cannot go below 0");
-        }
-
-        // For normal operations, enforce minimum balance unless preparing for account closure
-        if (newBalance.compareTo(BigDecimal.ZERO) > 0 && newBalance.compareTo(Account.MIN_BALANCE) < 0) {
-            throw new IllegalStateException("Account balance cannot go below " + Account.MIN_BALANCE + " except for account closure");
-        }
+        checkMinimumBalance(newBalance);
 
         // Update balance
         account.setBalance(newBalance);
+        ledgerService.record(cnp, account, LedgerEntryType.WITHDRAWAL, amount.negate());
 
         // Save the updated account
         accountRepository.save(account);
@@ -119,19 +287,128 @@ public class BankService {
         }
     }
 
+    /**
+     * Sells an amount from the client's account in one currency and credits its value at the current rate to the
+     * account in the other currency, in a single transaction. The sold account must keep the minimum balance or
+     * be emptied, as for a withdrawal; a monitored client causes one notification with both balances changed.
+     */
+    public ExchangeResult exchange(String cnp, Currency from, Money amount) {
+        return timed(Operation.EXCHANGE, from, () -> doExchange(cnp, from, amount));
+    }
+
+    private ExchangeResult doExchange(String cnp, Currency from, Money amount) {
+        if (from == null || !amount.isPositive()) {
+            throw new IllegalArgumentException("Exchange must specify a currency and a positive amount");
+        }
+        ExchangeRate rate = exchangeRates.current();
+        Money credited = rate.convert(from, amount);
+        if (!credited.isPositive()) {
+            throw new IllegalArgumentException("Exchange amount " + amount + " " + from + " is too small");
+        }
+        accountInfoCache.invalidate(cnp);
+
+        Client client = getClient(cnp);
+        Currency to = from == Currency.RON ? Currency.EUR : Currency.RON;
+        Account source = getAccountByCurrency(client, from);
+        Account target = getAccountByCurrency(client, to);
+
+        // Store previous balances for notification
+        Money previousRonBalance = client.getRonAccount().getBalance();
+        Money previousEuroBalance = client.getEuroAccount().getBalance();
+
+        Money newBalance = source.getBalance().minus(amount);
+        checkMinimumBalance(newBalance);
+
+        // Update both balances
+        source.setBalance(newBalance);
+        ledgerService.record(cnp, source, LedgerEntryType.EXCHANGE, amount.negate());
+        target.setBalance(target.getBalance().plus(credited));
+        ledgerService.record(cnp, target, LedgerEntryType.EXCHANGE, credited);
+
+        // Save the updated accounts
+        accountRepository.save(source);
+        accountRepository.save(target);
+
+        // A single notification carries both changed balances
+        if (client.isMonitored()) {
+            notificationService.notifyBalanceChange(client, previousRonBalance, previousEuroBalance);
+        }
+
+        return new ExchangeResult(cnp, from, amount, to, credited, rate.rateFor(from));
+    }
+
+    /**
+     * Applies a list of deposits and withdrawals in a single transaction.
+     * Clients are loaded in bulk and the account updates are flushed together using JDBC batching.
+     * Each operation is validated with the same rules as {@link #deposit} and {@link #withdraw};
+     * a rejected operation leaves balances untouched and does not affect the other operations.
+     *
+     * @return one result per operation, in request order
+     */
+    public List<BatchOperationResult> processBatch(List<BatchOperation> operations) {
+        return timed(Operation.BATCH, null, () -> doProcessBatch(operations));
+    }
+
+    private List<BatchOperationResult> doProcessBatch(List<BatchOperation> operations) {
+        Map<String, Client> clients = loadClients(operations);
+
+        // Balances of every touched client before the batch, used for notifications
+        Map<String, Money[]> previousBalances = new LinkedHashMap<>();
+        Set<Account> updatedAccounts = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<BatchOperationResult> results = new ArrayList<>(operations.size());
+
+        for (int i = 0; i < operations.size(); i++) {
+            BatchOperation operation = operations.get(i);
+            Client client = clients.get(operation.getCnp());
+            if (client != null) {
+                previousBalances.computeIfAbsent(client.getCnp(), cnp -> new Money[]{
+                        client.getRonAccount().getBalance(), client.getEuroAccount().getBalance()});
+            }
+
+            try {
+                Account account = applyBatchOperation(operation, client);
+                updatedAccounts.add(account);
+                results.add(BatchOperationResult.succeeded(i, operation.getCnp()));
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                results.add(BatchOperationResult.failed(i, operation.getCnp(), e.getMessage()));
+            } catch (ArithmeticException e) {
+                results.add(BatchOperationResult.failed(i, operation.getCnp(), OUT_OF_RANGE));
+            }
+        }
+
+        // Save all updated accounts, Hibernate groups the updates into JDBC batches
+        accountRepository.saveAll(updatedAccounts);
+        accountInfoCache.invalidateAll(previousBalances.keySet());
+
+        // Notify tax authority once per monitored client with its final balances
+        for (Map.Entry<String, Money[]> entry : previousBalances.entrySet()) {
+            Client client = clients.get(entry.getKey());
+            if (client.isMonitored()) {
+                notificationService.notifyBalanceChange(client, entry.getValue()[0], entry.getValue()[1]);
+            }
+        }
+
+        return results;
+    }
+
     /**
      * Special method to prepare accounts for closure by setting balances to zero
      * This bypasses the minimum balance requirement check
      */
     public void prepareAccountsForClosure(String cnp) {
+        timed(Operation.PREPARE_CLOSURE, null, () -> doPrepareAccountsForClosure(cnp));
+    }
+
+    private void doPrepareAccountsForClosure(String cnp) {
         Client client = getClient(cnp);
 
         // Store previous balances for notification
-        BigDecimal previousRonBalance = client.getRonAccount().getBalance();
-        BigDecimal previousEuroBalance = client.getEuroAccount().getBalance();
+        Money previousRonBalance = client.getRonAccount().getBalance();
+        Money previousEuroBalance = client.getEuroAccount().getBalance();
 
-        client.getRonAccount().setBalance(BigDecimal.ZERO);
-        client.getEuroAccount().setBalance(BigDecimal.ZERO);
+        zeroForClosure(cnp, client.getRonAccount());
+        zeroForClosure(cnp, client.getEuroAccount());
+        accountInfoCache.invalidate(cnp);
 
         // Save the updated accounts
         accountRepository.save(client.getRonAccount());
@@ -143,24 +420,57 @@ public class BankService {
         }
     }
 
-    public Client getAccountInfo(String cnp) {
-        return getClient(cnp);
+    /**
+     * Served from {@link AccountInfoCache}; only a miss queries the database, with a single projection
+     * statement. No transaction is opened for either: a single statement reads a consistent row on its own,
+     * and a caller's transaction is joined if there is one.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public ClientAccountInfo getAccountInfo(String cnp) {
+        return timed(Operation.ACCOUNT_INFO, null, () -> accountInfoCache.get(cnp, key ->
+                clientRepository.findAccountInfo(key)
+                        .orElseThrow(() -> new IllegalArgumentException("Client with CNP " + key + " not found"))));
     }
 
     // Tax authority operations
     public void startMonitoring(String cnp) {
-        Client client = getClient(cnp);
-        client.setMonitored(true);
-        fiscService.startMonitoring(client);
+        timed(Operation.START_MONITORING, null, () -> {
+            Client client = getClient(cnp);
+            client.setMonitored(true);
+            fiscService.startMonitoring(client);
+            accountInfoCache.invalidate(cnp);
+        });
     }
 
     public void stopMonitoring(String cnp) {
-        Client client = getClient(cnp);
-        client.setMonitored(false);
-        fiscService.stopMonitoring(cnp);
+        timed(Operation.STOP_MONITORING, null, () -> {
+            Client client = getClient(cnp);
+            client.setMonitored(false);
+            fiscService.stopMonitoring(cnp);
+            accountInfoCache.invalidate(cnp);
+        });
     }
 
     // Helper methods
+    private void timed(Operation operation, Currency currency, Runnable action) {
+        timed(operation, currency, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <T> T timed(Operation operation, Currency currency, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            T result = action.get();
+            metrics.recordOperation(operation, currency, Outcome.SUCCESS, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.recordOperation(operation, currency, Outcome.of(e), start);
+            throw e;
+        }
+    }
+
     private Client getClient(String cnp) {
         return clientRepository.findById(cnp)
                 .orElseThrow(() -> new IllegalArgumentException("Client with CNP " + cnp + " not found"));
@@ -169,5 +479,75 @@ public class BankService {
     private Account getAccountByCurrency(Client client, Currency currency) {
         return currency == Currency.RON ? client.getRonAccount() : client.getEuroAccount();
     }
+
+    private void recordAppliedUpdate(String cnp, Currency currency, LedgerEntryType type, Money amount,
+                                     UpdatedAccount account) {
+        ledgerService.recordApplied(cnp, account.getId(), currency, account.getLedgerSequence(), type, amount,
+                Money.ofMinor(account.getBalance()));
+    }
+
+    private void zeroForClosure(String cnp, Account account) {
+        Money balance = account.getBalance();
+        if (!balance.isZero()) {
+            account.setBalance(Money.ZERO);
+            ledgerService.record(cnp, account, LedgerEntryType.CLOSURE, balance.negate());
+        }
+    }
+
+    private void checkMinimumBalance(Money newBalance) {
+        if (newBalance.isNegative()) {
+            throw new IllegalStateException("Account balance cannot go below 0");
+        }
+
+        // For normal operations, enforce minimum balance unless preparing for account closure
+        if (newBalance.isPositive() && newBalance.isLessThan(Account.MIN_BALANCE)) {
+            throw new IllegalStateException("Account balance cannot go below " + Account.MIN_BALANCE + " except for account closure");
+        }
+    }
+
+    private Account applyBatchOperation(BatchOperation operation, Client client) {
+        if (operation.getCurrency() == null || operation.getAmount() == null || operation.getDirection() == null) {
+            throw new IllegalArgumentException("Operation must specify currency, amount and direction");
+        }
+
+        boolean isDeposit = operation.getDirection() == Direction.DEPOSIT;
+        Money amount = Money.of(operation.getAmount());
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException((isDeposit ? "Deposit" : "Withdrawal") + " amount must be positive");
+        }
+
+        if (client == null) {
+            throw new IllegalArgumentException("Client with CNP " + operation.getCnp() + " not found");
+        }
+
+        Account account = getAccountByCurrency(client, operation.getCurrency());
+        if (isDeposit) {
+            account.setBalance(account.getBalance().plus(amount));
+            ledgerService.record(client.getCnp(), account, LedgerEntryType.DEPOSIT, amount);
+        } else {
+            Money newBalance = account.getBalance().minus(amount);
+            checkMinimumBalance(newBalance);
+            account.setBalance(newBalance);
+            ledgerService.record(client.getCnp(), account, LedgerEntryType.WITHDRAWAL, amount.negate());
+        }
+        return account;
+    }
+
+    private Map<String, Client> loadClients(List<BatchOperation> operations) {
+        Set<String> distinctCnps = new LinkedHashSet<>();
+        for (BatchOperation operation : operations) {
+            distinctCnps.add(operation.getCnp());
+        }
+
+        List<String> cnps = new ArrayList<>(distinctCnps);
+        Map<String, Client> clients = new HashMap<>(cnps.size() * 2);
+        for (int from = 0; from < cnps.size(); from += BATCH_LOAD_CHUNK_SIZE) {
+            List<String> chunk = cnps.subList(from, Math.min(from + BATCH_LOAD_CHUNK_SIZE, cnps.size()));
+            for (Client client : clientRepository.findAllWithAccounts(chunk)) {
+                clients.put(client.getCnp(), client);
+            }
+        }
+        return clients;
+    }
 }
 
@@ -0,0 +1,76 @@
+package com.demo.banking.service;
+
+import com.demo.banking.model.ClientAccountInfo;
+import com.demo.banking.repository.ClientRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes every client and its balances as newline-delimited JSON, one {@link ClientAccountInfo} per line.
+ * <p>
+ * Clients are read in pages of {@code page-size} in CNP order, each page continuing after the last CNP of
+ * the previous one. Pages are projected straight into records, so no entities accumulate in a persistence
+ * context, and each page is written and flushed before the next one is read: memory use depends on the
+ * page size only, not on the number of clients. Every page is read in its own short transaction, so the
+ * export does not hold a connection while the client consumes the output and sees each client as of the
+ * moment its page was read.
+ */
+@Service
+public class ClientExportService {
+    public static final String NDJSON = "application/x-ndjson";
+
+    private final ClientRepository clientRepository;
+    private final ObjectWriter writer;
+    private final int pageSize;
+
+    public ClientExportService(ClientRepository clientRepository,
+                               ObjectMapper objectMapper,
+                               @Value("${banking.export.page-size:1000}") int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Export page size must be positive");
+        }
+
+        this.clientRepository = clientRepository;
+        // Lines are terminated explicitly and output is flushed once per page rather than after every client
+        this.writer = objectMapper.writerFor(ClientAccountInfo.class)
+                .withRootValueSeparator("")
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return number of clients written
+     */
+    public long writeNdjson(OutputStream out) throws IOException {
+        long written = 0;
+        String afterCnp = "";
+        try (JsonGenerator generator = writer.createGenerator(out)) {
+            List<ClientAccountInfo> page;
+            do {
+                page = clientRepository.findAccountInfoAfter(afterCnp, Limit.of(pageSize));
+                for (ClientAccountInfo info : page) {
+                    writer.writeValue(generator, info);
+                    generator.writeRaw('\n');
+                }
+                generator.flush();
+
+                if (!page.isEmpty()) {
+                    afterCnp = page.get(page.size() - 1).cnp();
+                    written += page.size();
+                }
+            } while (page.size() == pageSize);
+        }
+
+        System.out.println("BANK: Exported " + written + " clients");
+        return written;
+    }
+}
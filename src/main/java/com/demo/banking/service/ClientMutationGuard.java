@@ -0,0 +1,133 @@
+package com.demo.banking.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Protects concurrent balance mutations of the same client against lost updates.
+ * <p>
+ * Mutations must be invoked through the guard from outside the transaction, so that the
+ * lock (or the retry) spans the whole transaction including its commit:
+ * <ul>
+ *     <li>{@link Mode#STRIPED} serializes mutations of the same CNP with an in-process lock
+ *     selected by CNP hash; unrelated clients only contend when they share a stripe.</li>
+ *     <li>{@link Mode#OPTIMISTIC} relies on the {@code @Version} column of {@code Account} and
+ *     re-runs the transaction with a small randomized backoff when a conflict is detected.</li>
+ * </ul>
+ */
+@Component
+public class ClientMutationGuard {
+
+    public enum Mode {
+        STRIPED,
+        OPTIMISTIC
+    }
+
+    private final Mode mode;
+    private final int maxRetries;
+    private final ReentrantLock[] stripes;
+
+    public ClientMutationGuard(@Value("${banking.concurrency.mode:striped}") Mode mode,
+                               @Value("${banking.concurrency.stripes:256}") int stripeCount,
+                               @Value("${banking.concurrency.max-retries:5}") int maxRetries) {
+        if (stripeCount <= 0 || Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Number of lock stripes must be a positive power of two");
+        }
+
+        this.mode = mode;
+        this.maxRetries = maxRetries;
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void run(String cnp, Runnable action) {
+        execute(cnp, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T execute(String cnp, Supplier<T> action) {
+        if (mode == Mode.OPTIMISTIC) {
+            return executeWithRetry(action);
+        }
+
+        ReentrantLock lock = stripes[stripeIndex(cnp)];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Variant used by operations touching several clients at once.
+     * Stripes are always acquired in ascending order to avoid deadlocks between concurrent batches.
+     * Null CNPs are skipped: they identify no client, so the action rejects them on its own.
+     */
+    public <T> T execute(Collection<String> cnps, Supplier<T> action) {
+        if (mode == Mode.OPTIMISTIC) {
+            return executeWithRetry(action);
+        }
+
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (String cnp : cnps) {
+            if (cnp != null) {
+                indexes.add(stripeIndex(cnp));
+            }
+        }
+
+        for (int index : indexes) {
+            stripes[index].lock();
+        }
+        try {
+            return action.get();
+        } finally {
+            for (int index : indexes.descendingSet()) {
+                stripes[index].unlock();
+            }
+        }
+    }
+
+    private <T> T executeWithRetry(Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt > maxRetries) {
+                    throw e;
+                }
+                backOff(attempt);
+            }
+        }
+    }
+
+    private void backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1L << Math.min(attempt, 6)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying a conflicting update", e);
+        }
+    }
+
+    private int stripeIndex(String cnp) {
+        int hash = cnp.hashCode();
+        // Spread the higher bits, CNPs share long common prefixes
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+}
@@ -0,0 +1,90 @@
+package com.demo.banking.service;
+
+import com.demo.banking.model.ExchangeRate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.convert.ConversionException;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * RON/EUR exchange rates applied to exchanges between the accounts of a client.
+ * <p>
+ * The mid rate {@code banking.exchange.eur-ron-rate} and the spread {@code banking.exchange.spread} are read at
+ * startup; afterwards a rate feed or an operator publishes new ones through {@code PUT /api/exchange-rate}. Each
+ * is validated into an immutable {@link ExchangeRate} that replaces the current one with a single volatile write,
+ * so exchanges read it without locking. An invalid configuration is logged and exchanges are rejected until a
+ * valid rate is published; an invalid publication is rejected and the current rate kept.
+ * <p>
+ * Published rates expire: once the current one was published more than {@code max-age-ms} ago, e.g. because
+ * the rate feed stopped, exchanges are rejected until a new one is published. The age is measured from the
+ * publication itself, so it does not depend on when a background task last ran. The configured rates are
+ * static and do not expire.
+ */
+@Component
+public class ExchangeRates {
+    private static final String RATE_PROPERTY = "banking.exchange.eur-ron-rate";
+    private static final String SPREAD_PROPERTY = "banking.exchange.spread";
+
+    private final Duration maxAge;
+
+    private volatile ExchangeRate current;
+
+    public ExchangeRates(Environment environment,
+                         @Value("${banking.exchange.max-age-ms:60000}") long maxAgeMs) {
+        if (maxAgeMs <= 0) {
+            throw new IllegalArgumentException("Exchange rate max age must be positive");
+        }
+
+        this.maxAge = Duration.ofMillis(maxAgeMs);
+        this.current = read(environment);
+    }
+
+    private static ExchangeRate read(Environment environment) {
+        try {
+            return ExchangeRate.of(environment.getRequiredProperty(RATE_PROPERTY, BigDecimal.class),
+                    environment.getProperty(SPREAD_PROPERTY, BigDecimal.class, BigDecimal.ZERO), null);
+        } catch (IllegalArgumentException | IllegalStateException | ConversionException e) {
+            System.out.println("BANK: Exchanges are disabled until a rate is published, invalid exchange rate configuration: "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the current rates
+     *
+     * @param midRate RON per EUR
+     * @param spread  total spread around the mid rate, split evenly between both sides
+     * @throws IllegalArgumentException if the rate is not positive or the spread not between 0 and 2
+     */
+    public ExchangeRate publish(BigDecimal midRate, BigDecimal spread) {
+        if (midRate == null || spread == null) {
+            throw new IllegalArgumentException("Exchange rate and spread are required");
+        }
+
+        ExchangeRate rate = ExchangeRate.of(midRate, spread, Instant.now());
+        current = rate;
+        System.out.println("BANK: Published exchange rate " + midRate + " RON/EUR with spread " + spread);
+        return rate;
+    }
+
+    /**
+     * @throws IllegalStateException if no valid rates are available, or they were published more than
+     *                               {@code max-age-ms} ago
+     */
+    public ExchangeRate current() {
+        ExchangeRate rate = current;
+        if (rate == null) {
+            throw new IllegalStateException("Exchange rates are not available");
+        }
+        if (rate.publishedAt() != null && rate.publishedAt().plus(maxAge).isBefore(Instant.now())) {
+            throw new IllegalStateException("Exchange rates published at " + rate.publishedAt()
+                    + " are out of date, please retry later");
+        }
+        return rate;
+    }
+}
@@ -0,0 +1,231 @@
+package com.demo.banking.service;
+
+import com.demo.banking.metrics.FiscMetrics;
+import com.demo.banking.model.Money;
+import com.demo.banking.model.MonitoredBalance;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Saves the FISC monitored-client cache to a memory-mapped file and restores it on startup, so a restarted
+ * FISC has the baselines of its monitored clients without waiting for monitoring to be started again.
+ * <p>
+ * The snapshot is written every {@code interval-ms} and once more on shutdown, after the listeners have
+ * stopped. It is written to a temporary file next to {@code path} and moved over the previous snapshot, so a
+ * crash while writing leaves the previous one intact. Only the snapshot written on shutdown contains every
+ * notification acknowledged before it; it is marked by a {@code .clean} file next to {@code path} holding its
+ * {@code writtenAt}, which is deleted again on startup so a later crash cannot leave it behind. Layout,
+ * big-endian:
+ * <pre>
+ * magic      4 bytes  "FSC1"
+ * count      4 bytes  number of entries
+ * watermark  8 bytes  highest notification sequence contained in the snapshot
+ * writtenAt  8 bytes  epoch millis
+ * checksum   4 bytes  CRC32C of the entries
+ * entries    count x (2 bytes CNP length, CNP bytes, 8 bytes RON, 8 bytes EUR minor units, 8 bytes sequence)
+ * </pre>
+ * The file is read straight from the mapping without copying it onto the heap first. Entries are restored
+ * before the listener containers start; queued notifications are then applied on top of them, those already
+ * contained in the snapshot being dropped as stale by their sequence. A periodic snapshot restored after an
+ * unclean stop misses the notifications acknowledged after it was written, so the {@link FiscWarmup} then
+ * reloads the balances from the database; the balances of a snapshot written on a clean shutdown are kept, and
+ * the warm-up only adds and drops clients whose monitoring the database records differently. A missing,
+ * truncated or corrupt snapshot is logged and ignored.
+ */
+@Component
+@ConditionalOnProperty(name = "banking.fisc.snapshot.path")
+public class FiscCacheSnapshot {
+    private static final int MAGIC = 0x46534331;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int ENTRY_FIXED_SIZE = 2 + 8 + 8 + 8;
+
+    private final FiscService fiscService;
+    private final FiscMetrics metrics;
+    private final Path path;
+    private final Path cleanShutdownMarker;
+
+    private volatile boolean restored;
+    private volatile boolean cleanShutdown;
+    private long writtenAt;
+
+    public FiscCacheSnapshot(FiscService fiscService,
+                             FiscMetrics metrics,
+                             @Value("${banking.fisc.snapshot.path}") Path path) {
+        this.fiscService = fiscService;
+        this.metrics = metrics;
+        this.path = path;
+        this.cleanShutdownMarker = path.resolveSibling(path.getFileName() + ".clean");
+    }
+
+    @PostConstruct
+    public void restoreOnStartup() {
+        restore();
+    }
+
+    /**
+     * @return number of clients restored
+     */
+    public int restore() {
+        long cleanWrittenAt = consumeCleanShutdownMarker();
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                System.out.println("FISC: Ignoring snapshot " + path + ", not a monitored client snapshot");
+                return 0;
+            }
+            int count = buffer.getInt();
+            long watermark = buffer.getLong();
+            long writtenAt = buffer.getLong();
+            int checksum = buffer.getInt();
+
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                System.out.println("FISC: Ignoring snapshot " + path + ", checksum mismatch");
+                return 0;
+            }
+
+            byte[] cnp = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int length = Short.toUnsignedInt(buffer.getShort());
+                if (length > cnp.length) {
+                    cnp = new byte[length];
+                }
+                buffer.get(cnp, 0, length);
+                MonitoredBalance balance = new MonitoredBalance(Money.ofMinor(buffer.getLong()),
+                        Money.ofMinor(buffer.getLong()), buffer.getLong());
+                fiscService.restoreMonitoredBalance(new String(cnp, 0, length, StandardCharsets.UTF_8), balance);
+            }
+
+            cleanShutdown = writtenAt == cleanWrittenAt;
+            System.out.println("FISC: Restored " + count + " monitored clients from snapshot written at " + writtenAt
+                    + " up to sequence " + watermark + " in " + (System.nanoTime() - start) / 1_000_000 + " ms"
+                    + (cleanShutdown ? "" : ", not written on a clean shutdown: notifications acknowledged after "
+                    + watermark + " may be missing"));
+            restored = true;
+            return count;
+        } catch (IOException | BufferUnderflowException e) {
+            System.out.println("FISC: Ignoring snapshot " + path + ": " + e);
+            return 0;
+        }
+    }
+
+    /**
+     * @return whether the cache was restored from a valid snapshot
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * @return whether the restored snapshot was written on a clean shutdown, so it contains every notification
+     * acknowledged before the restart
+     */
+    public boolean isCleanShutdown() {
+        return cleanShutdown;
+    }
+
+    /**
+     * @return number of clients written
+     */
+    @Scheduled(initialDelayString = "${banking.fisc.snapshot.interval-ms:60000}",
+            fixedDelayString = "${banking.fisc.snapshot.interval-ms:60000}")
+    public synchronized int write() throws IOException {
+        long start = System.nanoTime();
+
+        // Copy the references first: the file size must be known before mapping it
+        List<Map.Entry<byte[], MonitoredBalance>> entries = new ArrayList<>(fiscService.getMonitoredBalances().size());
+        long size = HEADER_SIZE;
+        long watermark = 0;
+        for (Map.Entry<String, MonitoredBalance> entry : fiscService.getMonitoredBalances().entrySet()) {
+            byte[] cnp = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            if (cnp.length > 0xFFFF) {
+                continue;
+            }
+            entries.add(Map.entry(cnp, entry.getValue()));
+            size += ENTRY_FIXED_SIZE + cnp.length;
+            watermark = Math.max(watermark, entry.getValue().sequence());
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Snapshot of " + entries.size() + " monitored clients exceeds 2 GB");
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position(HEADER_SIZE);
+            for (Map.Entry<byte[], MonitoredBalance> entry : entries) {
+                MonitoredBalance balance = entry.getValue();
+                buffer.putShort((short) entry.getKey().length);
+                buffer.put(entry.getKey());
+                buffer.putLong(balance.ronBalance().minorUnits());
+                buffer.putLong(balance.euroBalance().minorUnits());
+                buffer.putLong(balance.sequence());
+            }
+
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(HEADER_SIZE, (int) (size - HEADER_SIZE)));
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, entries.size());
+            buffer.putLong(8, watermark);
+            writtenAt = System.currentTimeMillis();
+            buffer.putLong(16, writtenAt);
+            buffer.putInt(24, (int) crc.getValue());
+            buffer.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        metrics.recordSnapshotWritten(start);
+        System.out.println("FISC: Wrote snapshot of " + entries.size() + " monitored clients up to sequence " + watermark);
+        return entries.size();
+    }
+
+    @PreDestroy
+    public synchronized void writeOnShutdown() {
+        try {
+            write();
+            Files.writeString(cleanShutdownMarker, Long.toString(writtenAt));
+        } catch (IOException e) {
+            System.out.println("FISC: Failed to write snapshot " + path + ": " + e.getMessage());
+        }
+    }
+
+    // Reads and deletes the marker, returning the writtenAt of the snapshot written on shutdown or -1
+    private long consumeCleanShutdownMarker() {
+        if (!Files.exists(cleanShutdownMarker)) {
+            return -1;
+        }
+        try {
+            String writtenAt = Files.readString(cleanShutdownMarker);
+            Files.delete(cleanShutdownMarker);
+            return Long.parseLong(writtenAt.trim());
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("FISC: Ignoring clean shutdown marker " + cleanShutdownMarker + ": " + e);
+            return -1;
+        }
+    }
+}
@@ -1,72 +1,196 @@
 package com.demo.banking.service;
 
 import com.demo.banking.config.RabbitMQConfig;
+import com.demo.banking.metrics.FiscMetrics;
 import com.demo.banking.model.BalanceChangeNotification;
 import com.demo.banking.model.Client;
+import com.demo.banking.model.MonitoredBalance;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Tax authority side: keeps the last known balances of monitored clients up to date from the
+ * notifications sent by the bank.
+ * <p>
+ * The cache is shared by the concurrent listener threads and the HTTP threads starting and stopping
+ * monitoring. Entries are immutable {@link MonitoredBalance} values replaced with per-key atomic
+ * operations, so a notification costs at most one small record instead of a copy of the client.
+ * <p>
+ * Notifications are consumed one at a time or, with {@code banking.fisc.listener.mode=batch}, in batches
+ * where several updates of the same client are collapsed into the latest one before the cache is touched.
+ * Sequenced notifications older than the cached state are dropped, so consumers running in parallel
+ * cannot move a client back to an earlier balance.
+ * <p>
+ * With {@code banking.notifications.partitions} set, {@code FiscPartitionListenerConfigurer} calls the same
+ * handlers from one single-consumer container per partition queue, so the notifications of a client also
+ * arrive in order; the listeners below then only drain what was published to the shared queue before.
+ * <p>
+ * Every change of the cache is passed on to the monitored-client {@link BalanceAggregates}.
+ */
 @Service
 public class FiscService {
     // Cache to store monitored clients' information
-    private final Map<String, Client> monitoredClients = new HashMap<>();
+    private final ConcurrentMap<String, MonitoredBalance> monitoredClients = new ConcurrentHashMap<>();
+    private final FiscMetrics metrics;
+    private final BalanceAggregates aggregates;
+    private final NotificationClock clock;
+
+    public FiscService(FiscMetrics metrics, BalanceAggregates aggregates, NotificationClock clock) {
+        this.metrics = metrics;
+        this.aggregates = aggregates;
+        this.clock = clock;
+        metrics.monitorCache(monitoredClients);
+    }
 
     public void startMonitoring(Client client) {
-        // Cache the client information
-        monitoredClients.put(client.getCnp(), copyClient(client));
+        // Cache the client information, newer than any notification issued before
+        MonitoredBalance balance = MonitoredBalance.of(client, clock.next());
+        MonitoredBalance previous = monitoredClients.put(client.getCnp(), balance);
+        aggregates.recordMonitoredChange(client.getCnp(), previous, balance);
         System.out.println("FISC: Started monitoring client with CNP: " + client.getCnp());
     }
 
     public void stopMonitoring(String cnp) {
-        if (monitoredClients.remove(cnp) != null) {
+        MonitoredBalance removed = monitoredClients.remove(cnp);
+        if (removed != null) {
+            aggregates.recordMonitoredChange(cnp, removed, null);
             System.out.println("FISC: Stopped monitoring client with CNP: " + cnp);
         }
     }
 
     /**
-     * Asynchronously receive balance change notifications from the message queue
+     * Puts balances loaded at startup, from a cache snapshot or the database, into the cache. An entry that is
+     * already cached with a later sequence is kept.
+     */
+    public void restoreMonitoredBalance(String cnp, MonitoredBalance balance) {
+        MonitoredBalance[] previous = new MonitoredBalance[1];
+        MonitoredBalance restored = monitoredClients.compute(cnp, (key, current) -> {
+            previous[0] = current;
+            return current != null && current.sequence() > balance.sequence() ? current : balance;
+        });
+        aggregates.recordMonitoredChange(cnp, previous[0], restored);
+    }
+
+    /**
+     * Drops every cached client that is not in the given set, e.g. clients no longer monitored according to
+     * the database but still contained in a snapshot.
+     *
+     * @return number of clients removed
+     */
+    public int retainMonitored(Set<String> cnps) {
+        int removed = 0;
+        for (Map.Entry<String, MonitoredBalance> entry : monitoredClients.entrySet()) {
+            if (!cnps.contains(entry.getKey()) && monitoredClients.remove(entry.getKey(), entry.getValue())) {
+                aggregates.recordMonitoredChange(entry.getKey(), entry.getValue(), null);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return read-only, weakly consistent view of the cache: entries changed while it is iterated may or
+     * may not be seen, every entry seen is a complete value
+     */
+    public Map<String, MonitoredBalance> getMonitoredBalances() {
+        return Collections.unmodifiableMap(monitoredClients);
+    }
+
+    /**
+     * @return last known balances of the client, or null if it is not monitored
+     */
+    public MonitoredBalance getMonitoredBalance(String cnp) {
+        return monitoredClients.get(cnp);
+    }
+
+    /**
+     * Asynchronously receive balance change notifications from the message queue. Starts in the single
+     * listener mode, unless {@code spring.rabbitmq.listener.simple.auto-startup} is false.
      */
-    @RabbitListener(queues = RabbitMQConfig.QUEUE_NAME)
+    @RabbitListener(queues = RabbitMQConfig.QUEUE_NAME,
+            autoStartup = "#{'${banking.fisc.listener.mode:single}' == 'single' and ${spring.rabbitmq.listener.simple.auto-startup:true}}")
     public void handleBalanceChangeNotification(BalanceChangeNotification notification) {
+        long start = System.nanoTime();
+        if (applyNotification(notification)) {
+            metrics.recordConsumed(start, notification.getSentAt());
+        }
+    }
+
+    /**
+     * Receive balance change notifications in batches; the whole batch is acknowledged at once after this returns
+     */
+    @RabbitListener(queues = RabbitMQConfig.QUEUE_NAME,
+            containerFactory = RabbitMQConfig.BATCH_CONTAINER_FACTORY,
+            autoStartup = "#{'${banking.fisc.listener.mode:single}' == 'batch' and ${spring.rabbitmq.listener.simple.auto-startup:true}}")
+    public void handleBalanceChangeNotifications(List<BalanceChangeNotification> notifications) {
+        long start = System.nanoTime();
+
+        // Collapse the updates of each client into the latest one
+        Map<String, BalanceChangeNotification> latestByCnp = new HashMap<>(notifications.size() * 2);
+        int coalesced = 0;
+        for (BalanceChangeNotification notification : notifications) {
+            BalanceChangeNotification previous = latestByCnp.putIfAbsent(notification.getCnp(), notification);
+            if (previous != null) {
+                previous.merge(notification);
+                coalesced++;
+            }
+        }
+
+        for (BalanceChangeNotification notification : latestByCnp.values()) {
+            if (applyNotification(notification)) {
+                metrics.recordLag(notification.getSentAt());
+            }
+        }
+        metrics.recordBatchConsumed(start, notifications.size(), coalesced);
+    }
+
+    /**
+     * @return whether the notification was applied to the cache
+     */
+    private boolean applyNotification(BalanceChangeNotification notification) {
         String cnp = notification.getCnp();
-        Client cachedClient = monitoredClients.get(cnp);
+
+        // Only clients that are still monitored are updated; stopMonitoring wins over a racing notification
+        MonitoredBalance[] previous = new MonitoredBalance[1];
+        MonitoredBalance updated = monitoredClients.computeIfPresent(cnp, (key, current) -> {
+            previous[0] = current;
+            return current.apply(notification);
+        });
+        aggregates.recordMonitoredChange(cnp, previous[0], updated);
 
         // If client is not monitored, ignore the notification
-        if (cachedClient == null) {
+        if (updated == null) {
             System.out.println("FISC: Ignoring notification for non-monitored client with CNP: " + cnp);
-            return;
+            metrics.recordIgnored();
+            return false;
         }
 
-        // Create updated client from notification data
-        Client updatedClient = copyClient(cachedClient);
+        // This or a newer notification of the client was already applied, e.g. by another consumer or before
+        // a redelivery, or the balances were read after it was issued
+        if (previous[0].supersedes(notification)) {
+            System.out.println("FISC: Ignoring outdated notification for client with CNP: " + cnp);
+            metrics.recordStale();
+            return false;
+        }
 
-        // Update cached client information and display appropriate messages
+        // Display which balances changed
         System.out.println("FISC: Async notification received for client with CNP: " + cnp);
 
         if (notification.isRonChanged()) {
-            updatedClient.getRonAccount().setBalance(notification.getRonBalance());
             System.out.println("FISC: RON account balance changed to: " + notification.getRonBalance());
         }
 
         if (notification.isEuroChanged()) {
-            updatedClient.getEuroAccount().setBalance(notification.getEuroBalance());
             System.out.println("FISC: EUR account balance changed to: " + notification.getEuroBalance());
         }
-
-        // Update cached client information
-        monitoredClients.put(cnp, updatedClient);
-    }
-
-    // Helper method to create a deep copy of a client
-    private Client copyClient(Client original) {
-        Client copy = new Client(original.getCnp());
-        copy.getRonAccount().setBalance(original.getRonAccount().getBalance());
-        copy.getEuroAccount().setBalance(original.getEuroAccount().getBalance());
-        copy.setMonitored(original.isMonitored());
-        return copy;
+        return true;
     }
 }
-
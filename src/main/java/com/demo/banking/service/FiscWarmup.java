@@ -0,0 +1,167 @@
+package com.demo.banking.service;
+
+import com.demo.banking.model.ClientAccountInfo;
+import com.demo.banking.model.MonitoredBalance;
+import com.demo.banking.repository.ClientRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fills the FISC cache with every client flagged as monitored in the database when the application starts,
+ * so notifications are not ignored after a restart until monitoring is started again.
+ * <p>
+ * Monitored clients are read in keyset pages of {@code page-size}, projected straight into records through
+ * the {@code idx_clients_monitored} index. While the next page is read, up to {@code parallelism} workers put
+ * the previous ones into the cache. The warm-up runs as a lifecycle phase before the web server and the FISC
+ * listener containers start, so the first notification consumed already finds its client.
+ * <p>
+ * Loaded balances carry a sequence taken from the notification clock when the warm-up started: notifications
+ * of changes made before are dropped as stale, since the database already reflects them, and later ones apply.
+ * That sequence is newer than every entry of a {@link FiscCacheSnapshot}, which would therefore be overwritten.
+ * When the cache was restored from a snapshot written on a clean shutdown, the entries of clients that are
+ * monitored according to the database are kept with their sequences, so the queued notifications bring them
+ * up to date, and only the clients missing from the snapshot are loaded. A periodic snapshot restored after a
+ * crash misses the notifications acknowledged after it was written, so all of its balances are reloaded. Either
+ * way, clients no longer monitored according to the database are dropped.
+ */
+@Component
+@ConditionalOnProperty(name = "banking.fisc.warmup.enabled", havingValue = "true", matchIfMissing = true)
+public class FiscWarmup implements SmartLifecycle {
+    // Before the web server (DEFAULT_PHASE - 1024) and the listener containers (DEFAULT_PHASE)
+    public static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 2048;
+
+    private final ClientRepository clientRepository;
+    private final FiscService fiscService;
+    private final ObjectProvider<FiscCacheSnapshot> snapshot;
+    private final NotificationClock clock;
+    private final int pageSize;
+    private final int parallelism;
+    private final int progressInterval;
+
+    private volatile boolean running;
+
+    public FiscWarmup(ClientRepository clientRepository,
+                      FiscService fiscService,
+                      ObjectProvider<FiscCacheSnapshot> snapshot,
+                      NotificationClock clock,
+                      @Value("${banking.fisc.warmup.page-size:5000}") int pageSize,
+                      @Value("${banking.fisc.warmup.parallelism:4}") int parallelism,
+                      @Value("${banking.fisc.warmup.progress-interval:100000}") int progressInterval) {
+        if (pageSize <= 0 || parallelism <= 0 || progressInterval <= 0) {
+            throw new IllegalArgumentException("Warm-up page size, parallelism and progress interval must be positive");
+        }
+
+        this.clientRepository = clientRepository;
+        this.fiscService = fiscService;
+        this.snapshot = snapshot;
+        this.clock = clock;
+        this.pageSize = pageSize;
+        this.parallelism = parallelism;
+        this.progressInterval = progressInterval;
+    }
+
+    @Override
+    public void start() {
+        FiscCacheSnapshot restoredFrom = snapshot.getIfAvailable();
+        warmUp(restoredFrom != null && restoredFrom.isCleanShutdown());
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    /**
+     * @param keepCached whether to keep the cached balances of clients monitored according to the database,
+     *                   i.e. the cache was restored from a complete snapshot
+     * @return number of monitored clients according to the database
+     */
+    public int warmUp(boolean keepCached) {
+        long start = System.nanoTime();
+        long sequence = clock.next();
+        Set<String> monitored = ConcurrentHashMap.newKeySet();
+        AtomicInteger kept = new AtomicInteger();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "fisc-warmup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int loaded = 0;
+        try {
+            List<Future<?>> chunks = new ArrayList<>();
+            String afterCnp = "";
+            List<ClientAccountInfo> page;
+            do {
+                page = clientRepository.findMonitoredAfter(afterCnp, Limit.of(pageSize));
+                if (page.isEmpty()) {
+                    break;
+                }
+
+                List<ClientAccountInfo> chunk = page;
+                chunks.add(workers.submit(() -> {
+                    for (ClientAccountInfo info : chunk) {
+                        if (keepCached && fiscService.getMonitoredBalance(info.cnp()) != null) {
+                            kept.incrementAndGet();
+                        } else {
+                            fiscService.restoreMonitoredBalance(info.cnp(),
+                                    new MonitoredBalance(info.ronBalance(), info.euroBalance(), sequence));
+                        }
+                        monitored.add(info.cnp());
+                    }
+                }));
+
+                afterCnp = page.get(page.size() - 1).cnp();
+                int previous = loaded;
+                loaded += page.size();
+                if (loaded / progressInterval > previous / progressInterval) {
+                    System.out.println("FISC: Warm-up read " + loaded + " monitored clients in "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms");
+                }
+            } while (page.size() == pageSize);
+
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("FISC warm-up interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("FISC warm-up failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+
+        int removed = fiscService.retainMonitored(monitored);
+        System.out.println("FISC: Warmed up " + loaded + " monitored clients in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms" + (kept.get() > 0 ? ", kept " + kept + " from the snapshot" : "")
+                + (removed > 0 ? ", dropped " + removed + " no longer monitored" : ""));
+        return loaded;
+    }
+}
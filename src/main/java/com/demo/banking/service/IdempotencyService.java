@@ -0,0 +1,162 @@
+package com.demo.banking.service;
+
+import com.demo.banking.metrics.BankingMetrics;
+import com.demo.banking.model.IdempotencyRecord;
+import com.demo.banking.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+
+/**
+ * Makes mutations safe to retry: a request sent again with the same {@code Idempotency-Key} gets the response of
+ * the first one instead of being applied twice.
+ * <p>
+ * The mutation runs in a transaction that also inserts the key and the response into {@code idempotency_keys},
+ * so a key is recorded if and only if its mutation committed. Recorded responses are kept in a bounded in-memory
+ * index of {@code max-size} keys, so a replay is answered without touching the database and a new key costs no
+ * lookup at all. A key missing from memory, because it was evicted, recorded by another instance or by a
+ * concurrent request, is caught by the primary key of the table: the mutation is rolled back and the recorded
+ * response is read and replayed instead.
+ * <p>
+ * Keys expire from memory and from the table after {@code retention-ms}. Requests rejected by the business rules
+ * change nothing and are not recorded, so sending them again runs them again.
+ */
+@Service
+public class IdempotencyService {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    /**
+     * The key is malformed or was first used for a different request
+     */
+    public static class IdempotencyKeyException extends RuntimeException {
+        public IdempotencyKeyException(String message) {
+            super(message);
+        }
+    }
+
+    private record RecordedResponse(String request, int status, String body) {
+    }
+
+    private final IdempotencyRecordRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final BankingMetrics metrics;
+    private final Cache<String, RecordedResponse> recorded;
+    private final Duration retention;
+
+    public IdempotencyService(IdempotencyRecordRepository repository,
+                              PlatformTransactionManager transactionManager,
+                              ObjectMapper objectMapper,
+                              BankingMetrics metrics,
+                              @Value("${banking.idempotency.max-size:100000}") long maxSize,
+                              @Value("${banking.idempotency.retention-ms:86400000}") long retentionMs) {
+        if (maxSize < 0 || retentionMs <= 0) {
+            throw new IllegalArgumentException("Idempotency index size must not be negative and retention must be positive");
+        }
+
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.retention = Duration.ofMillis(retentionMs);
+        this.recorded = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(retention)
+                .recordStats()
+                .build();
+        metrics.monitorIdempotencyCache(recorded);
+    }
+
+    /**
+     * Runs the action and responds with its result, or replays the response recorded for the key.
+     * Must be called outside of a transaction, e.g. within the client's mutation guard.
+     *
+     * @param key     value of the {@code Idempotency-Key} header, null to run the action without recording it
+     * @param request operation and parameters, a replay must match the request that recorded the key
+     * @param action  mutation to run, returning the response body or null for an empty response
+     * @throws IdempotencyKeyException if the key is malformed or was used for a different request
+     */
+    public ResponseEntity<?> execute(String key, String request, Supplier<?> action) {
+        if (key == null) {
+            return respond(action.get());
+        }
+        if (key.isBlank() || key.length() > IdempotencyRecord.MAX_KEY_LENGTH) {
+            throw new IdempotencyKeyException(HEADER + " must have between 1 and "
+                    + IdempotencyRecord.MAX_KEY_LENGTH + " characters");
+        }
+
+        RecordedResponse response = recorded.getIfPresent(key);
+        if (response != null) {
+            metrics.recordIdempotentReplay(false);
+            return replay(key, request, response);
+        }
+
+        try {
+            RecordedResponse[] outcome = new RecordedResponse[1];
+            Object body = transactionTemplate.execute(status -> {
+                Object result = action.get();
+                outcome[0] = new RecordedResponse(request, HttpStatus.OK.value(), toJson(result));
+                repository.saveAndFlush(new IdempotencyRecord(key, request, outcome[0].status(), outcome[0].body(),
+                        Instant.now()));
+                return result;
+            });
+            recorded.put(key, outcome[0]);
+            return respond(body);
+        } catch (DataIntegrityViolationException e) {
+            // Recorded by an earlier or concurrent request that is no longer or not yet in memory
+            IdempotencyRecord record = repository.findById(key).orElseThrow(() -> e);
+            response = new RecordedResponse(record.getRequest(), record.getStatus(), record.getBody());
+            recorded.put(key, response);
+            metrics.recordIdempotentReplay(true);
+            return replay(key, request, response);
+        }
+    }
+
+    /**
+     * @return number of expired keys deleted
+     */
+    @Scheduled(fixedDelayString = "${banking.idempotency.cleanup-interval-ms:60000}")
+    public int deleteExpired() {
+        return repository.deleteCreatedBefore(Instant.now().minus(retention));
+    }
+
+    private ResponseEntity<?> respond(Object body) {
+        return body == null ? ResponseEntity.ok().build() : ResponseEntity.ok(body);
+    }
+
+    private ResponseEntity<?> replay(String key, String request, RecordedResponse response) {
+        if (!response.request().equals(request)) {
+            throw new IdempotencyKeyException(HEADER + " " + key + " was already used for a different request");
+        }
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.status()).header(REPLAYED_HEADER, "true");
+        return response.body() == null ? builder.build()
+                : builder.contentType(MediaType.APPLICATION_JSON).body(response.body());
+    }
+
+    private String toJson(Object body) {
+        if (body == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Response of an idempotent request cannot be recorded", e);
+        }
+    }
+}
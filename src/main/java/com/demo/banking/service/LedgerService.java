@@ -0,0 +1,155 @@
+package com.demo.banking.service;
+
+import com.demo.banking.model.Account;
+import com.demo.banking.model.BalanceSnapshot;
+import com.demo.banking.model.Currency;
+import com.demo.banking.model.LedgerCheckpoint;
+import com.demo.banking.model.LedgerEntry;
+import com.demo.banking.model.LedgerEntryType;
+import com.demo.banking.model.LedgerTail;
+import com.demo.banking.model.Money;
+import com.demo.banking.repository.BalanceSnapshotRepository;
+import com.demo.banking.repository.LedgerCheckpointRepository;
+import com.demo.banking.repository.LedgerEntryRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only ledger of balance movements with periodic balance snapshots.
+ * Entries are written in the transaction of the mutation that produced them and are grouped
+ * into JDBC batches at flush, so a batch of operations costs a few multi-row inserts.
+ * Every movement is also passed on to the {@link BalanceAggregates} of all accounts.
+ * <p>
+ * Snapshot runs only read the entries after a persisted checkpoint, so their cost follows the number of new
+ * entries rather than the size of the ledger.
+ */
+@Service
+@Transactional
+public class LedgerService {
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final BalanceSnapshotRepository snapshotRepository;
+    private final LedgerCheckpointRepository checkpointRepository;
+    private final BalanceAggregates aggregates;
+    private final Duration snapshotInterval;
+
+    public LedgerService(LedgerEntryRepository ledgerEntryRepository, BalanceSnapshotRepository snapshotRepository,
+                         LedgerCheckpointRepository checkpointRepository, BalanceAggregates aggregates,
+                         @Value("${banking.ledger.snapshot-interval-ms:60000}") long snapshotIntervalMs) {
+        if (snapshotIntervalMs <= 0) {
+            throw new IllegalArgumentException("Ledger snapshot interval must be positive");
+        }
+
+        this.ledgerEntryRepository = ledgerEntryRepository;
+        this.snapshotRepository = snapshotRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.aggregates = aggregates;
+        this.snapshotInterval = Duration.ofMillis(snapshotIntervalMs);
+    }
+
+    /**
+     * Records a movement applied in memory to a managed account, advancing its ledger sequence
+     *
+     * @param amount signed amount, negative for withdrawals and closures
+     */
+    public void record(String cnp, Account account, LedgerEntryType type, Money amount) {
+        account.setLedgerSequence(account.getLedgerSequence() + 1);
+        recordApplied(cnp, account.getId(), account.getCurrency(), account.getLedgerSequence(), type, amount,
+                account.getBalance());
+    }
+
+    /**
+     * Records a movement already applied by a conditional update, which advanced the ledger sequence itself
+     *
+     * @param sequence ledger sequence of the account after the update
+     * @param amount   signed amount, negative for withdrawals and closures
+     * @param balance  balance of the account after the update
+     */
+    public void recordApplied(String cnp, Long accountId, Currency currency, long sequence, LedgerEntryType type,
+                              Money amount, Money balance) {
+        ledgerEntryRepository.save(new LedgerEntry(accountId, cnp, sequence, type, amount, balance, Instant.now()));
+        aggregates.recordBalanceChange(cnp, currency, balance.minus(amount), balance);
+    }
+
+    /**
+     * Rebuilds the balance of an account from its last snapshot plus the entries recorded after it
+     */
+    @Transactional(readOnly = true)
+    public Money rebuildBalance(Long accountId) {
+        BalanceSnapshot snapshot = snapshotRepository.findById(accountId).orElse(null);
+        Money base = snapshot != null ? snapshot.getBalance() : Money.ZERO;
+        long afterSequence = snapshot != null ? snapshot.getSequence() : 0;
+        return base.plus(Money.ofMinor(ledgerEntryRepository.sumAfter(accountId, afterSequence)));
+    }
+
+    /**
+     * Folds the ledger entries recorded since the last run into the balance snapshots.
+     * Only accounts with new entries are touched; their tails are summed in a single grouped query over the
+     * entries after the checkpoint.
+     * <p>
+     * Entries of a transaction that has not committed yet are invisible, so the checkpoint only advances to the
+     * last entry recorded more than one interval ago: ids are handed out in increasing order, so every entry
+     * still in flight comes after it, provided transactions commit within an interval. Entries after the
+     * checkpoint that were already folded are read again by the next run and skipped by their sequence.
+     *
+     * @return number of snapshots written
+     */
+    @Scheduled(fixedDelayString = "${banking.ledger.snapshot-interval-ms:60000}")
+    public int takeSnapshots() {
+        Instant now = Instant.now();
+        LedgerCheckpoint checkpoint = checkpointRepository.findById(LedgerCheckpoint.SNAPSHOTS)
+                .orElseGet(() -> new LedgerCheckpoint(LedgerCheckpoint.SNAPSHOTS, 0, now));
+        long afterId = checkpoint.getLastEntryId();
+        // Read before the tails, so the checkpoint never passes an entry the tails did not see
+        Long settledId = ledgerEntryRepository.findLastIdRecordedBefore(afterId, now.minus(snapshotInterval));
+
+        int written = foldTails(ledgerEntryRepository.findTailsAfter(afterId), now);
+        if (settledId != null) {
+            checkpoint.setLastEntryId(settledId);
+            checkpoint.setUpdatedAt(now);
+            checkpointRepository.save(checkpoint);
+        }
+        return written;
+    }
+
+    private int foldTails(List<LedgerTail> tails, Instant now) {
+        if (tails.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> accountIds = new ArrayList<>(tails.size());
+        for (LedgerTail tail : tails) {
+            accountIds.add(tail.accountId());
+        }
+
+        Map<Long, BalanceSnapshot> snapshots = new HashMap<>(tails.size() * 2);
+        for (BalanceSnapshot snapshot : snapshotRepository.findAllById(accountIds)) {
+            snapshots.put(snapshot.getAccountId(), snapshot);
+        }
+
+        List<BalanceSnapshot> updated = new ArrayList<>(tails.size());
+        for (LedgerTail tail : tails) {
+            BalanceSnapshot snapshot = snapshots.get(tail.accountId());
+            if (snapshot == null) {
+                // Accounts are opened with a zero balance, so the first snapshot is the sum of all entries
+                snapshot = new BalanceSnapshot(tail.accountId(), tail.lastSequence(), tail.amount(), now);
+            } else {
+                snapshot.setBalance(snapshot.getBalance().plus(tail.amount()));
+                snapshot.setSequence(tail.lastSequence());
+                snapshot.setTakenAt(now);
+            }
+            updated.add(snapshot);
+        }
+
+        snapshotRepository.saveAll(updated);
+        return updated.size();
+    }
+}
@@ -0,0 +1,26 @@
+package com.demo.banking.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hybrid clock ordering balance changes: wall-clock millis in the high bits, so sequences keep increasing across
+ * restarts, and a counter in the low 20 bits for changes within the same millisecond.
+ * <p>
+ * Notifications are stamped with it when they are created, and FISC stamps the balances it reads itself, when
+ * monitoring starts or the cache is warmed up, from the same clock. A notification issued before such a read is
+ * then older than the balances read and dropped, whatever queue or outbox backlog delays it.
+ */
+@Component
+public class NotificationClock {
+    private final AtomicLong last = new AtomicLong();
+
+    /**
+     * @return a sequence greater than every sequence returned before
+     */
+    public long next() {
+        long now = System.currentTimeMillis() << 20;
+        return last.updateAndGet(previous -> Math.max(previous + 1, now));
+    }
+}
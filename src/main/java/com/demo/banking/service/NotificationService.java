@@ -1,19 +1,150 @@
 package com.demo.banking.service;
 
+import com.demo.banking.config.NotificationRouting;
 import com.demo.banking.config.RabbitMQConfig;
+import com.demo.banking.metrics.BankingMetrics;
 import com.demo.banking.model.BalanceChangeNotification;
 import com.demo.banking.model.Client;
+import com.demo.banking.model.Money;
+import com.demo.banking.model.OutboxMessage;
+import com.demo.banking.repository.OutboxMessageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Publishes balance change notifications of monitored clients to FISC.
+ * <p>
+ * In {@link Mode#SYNC} mode every change is sent to the broker on the calling thread, within the publish
+ * window of {@link AdmissionControl}: when the broker is slow the change is rolled back and the request shed
+ * instead of waiting for it. In
+ * {@link Mode#ASYNC} mode changes are handed to a background publisher once the surrounding
+ * transaction commits:
+ * <ul>
+ *     <li>pending notifications are kept per CNP, so further changes of a client that has not been
+ *     published yet are merged into its pending notification instead of producing new messages;</li>
+ *     <li>the publisher sends up to {@code batch-size} notifications over a single channel, waiting at
+ *     most {@code linger-ms} after the first one for the batch to fill up;</li>
+ *     <li>the number of clients waiting to be published is bounded by {@code queue-capacity}; when it
+ *     is reached the notification is sent synchronously, which slows producers down instead of
+ *     dropping changes. {@link AdmissionControl} sheds changes of monitored clients before the queue
+ *     gets there.</li>
+ * </ul>
+ * A batch that fails to publish is counted and logged, not retried. The publisher runs on a virtual
+ * thread when {@code spring.threads.virtual.enabled} is set on Java 21 or later.
+ * <p>
+ * In {@link Mode#OUTBOX} mode the notification is written to the outbox table in the transaction
+ * of the mutation and published later by {@link OutboxRelay}, so it is sent exactly when the change
+ * commits and broker availability does not affect the request until the outbox backs up.
+ * <p>
+ * In both modes a change is rejected with an {@link AdmissionControl.OverloadedException}, rolling its
+ * transaction back, while {@code shed-queue-depth} notifications wait to be published. Only changes of
+ * monitored clients get here, so the others are not affected by a backlog they do not add to.
+ */
 @Service
 public class NotificationService {
+
+    public enum Mode {
+        SYNC,
+        ASYNC,
+        OUTBOX
+    }
+
     private final RabbitTemplate rabbitTemplate;
+    private final OutboxMessageRepository outboxRepository;
+    private final NotificationRouting routing;
+    private final BankingMetrics metrics;
+    private final AdmissionControl admission;
+    private final Mode mode;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final boolean virtualThreads;
+
+    // Latest unpublished state per CNP and the order in which clients became pending
+    private final ConcurrentMap<String, BalanceChangeNotification> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> pendingCnps;
+
+    private final NotificationClock clock;
+
+    private volatile boolean running;
+    private Thread publisher;
+
+    public NotificationService(RabbitTemplate rabbitTemplate,
+                               OutboxMessageRepository outboxRepository,
+                               NotificationRouting routing,
+                               BankingMetrics metrics,
+                               AdmissionControl admission,
+                               NotificationClock clock,
+                               @Value("${banking.notifications.mode:sync}") Mode mode,
+                               @Value("${banking.notifications.batch-size:100}") int batchSize,
+                               @Value("${banking.notifications.linger-ms:20}") long lingerMs,
+                               @Value("${banking.notifications.queue-capacity:10000}") int queueCapacity,
+                               Environment environment) {
+        if (batchSize <= 0 || queueCapacity <= 0 || lingerMs < 0) {
+            throw new IllegalArgumentException("Notification batch size and queue capacity must be positive and linger must not be negative");
+        }
 
-    public NotificationService(RabbitTemplate rabbitTemplate) {
         this.rabbitTemplate = rabbitTemplate;
+        this.outboxRepository = outboxRepository;
+        this.routing = routing;
+        this.metrics = metrics;
+        this.admission = admission;
+        this.clock = clock;
+        this.mode = mode;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.virtualThreads = Threading.VIRTUAL.isActive(environment);
+        this.pendingCnps = new ArrayBlockingQueue<>(queueCapacity);
+        metrics.monitorPublishQueue(pendingCnps);
+        if (mode == Mode.ASYNC) {
+            admission.monitorPublishBacklog(pendingCnps::size);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (mode == Mode.ASYNC && publisher == null) {
+            running = true;
+            if (virtualThreads) {
+                publisher = new VirtualThreadTaskExecutor().getVirtualThreadFactory().newThread(this::runPublisher);
+                publisher.setName("notification-publisher");
+            } else {
+                publisher = new Thread(this::runPublisher, "notification-publisher");
+                publisher.setDaemon(true);
+            }
+            publisher.start();
+        }
+    }
+
+    /**
+     * Stops the background publisher after it has sent everything that is still pending.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (publisher != null) {
+            publisher.join(TimeUnit.SECONDS.toMillis(10));
+            publisher = null;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
     }
 
     /**
@@ -22,25 +153,177 @@ public class NotificationService {
      * @param client The client whose balance has changed
      * @param previousRonBalance Previous RON account balance
      * @param previousEuroBalance Previous EUR account balance
+     * @throws AdmissionControl.OverloadedException if too many notifications are waiting to be published
      */
-    public void notifyBalanceChange(Client client, BigDecimal previousRonBalance, BigDecimal previousEuroBalance) {
+    public void notifyBalanceChange(Client client, Money previousRonBalance, Money previousEuroBalance) {
         // Check which account balance has changed
         boolean ronChanged = !previousRonBalance.equals(client.getRonAccount().getBalance());
         boolean euroChanged = !previousEuroBalance.equals(client.getEuroAccount().getBalance());
 
         // Only send notification if at least one balance has changed
         if (ronChanged || euroChanged) {
+            admission.checkPublishBacklog();
             BalanceChangeNotification notification = new BalanceChangeNotification(client, ronChanged, euroChanged);
+            // Changes of one client are serialized by ClientMutationGuard, so the sequences of its
+            // notifications follow the order of its changes
+            notification.setSequence(clock.next());
+
+            if (mode == Mode.SYNC) {
+                admission.publish(() -> publish(notification));
+            } else if (mode == Mode.OUTBOX) {
+                outboxRepository.save(new OutboxMessage(notification));
+            } else if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // Balances captured above are only published if the change is committed
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        enqueue(notification);
+                    }
+                });
+            } else {
+                enqueue(notification);
+            }
+        }
+    }
+
+    /**
+     * Sends all pending notifications on the calling thread.
+     *
+     * @return number of notifications sent
+     */
+    public int flush() {
+        List<BalanceChangeNotification> batch = new ArrayList<>(batchSize);
+        int sent = 0;
+        String cnp;
+        while ((cnp = pendingCnps.poll()) != null) {
+            takePending(cnp, batch);
+            if (batch.size() == batchSize) {
+                sent += publishBatch(batch);
+            }
+        }
+        return sent + publishBatch(batch);
+    }
 
-            // Send the notification asynchronously to the queue
+    private void publish(BalanceChangeNotification notification) {
+        // Send the notification asynchronously to the queue
+        long start = System.nanoTime();
+        try {
             rabbitTemplate.convertAndSend(
                     RabbitMQConfig.EXCHANGE_NAME,
-                    RabbitMQConfig.ROUTING_KEY,
+                    routing.routingKey(notification.getCnp()),
                     notification
             );
+        } catch (RuntimeException e) {
+            metrics.recordPublishFailure();
+            throw e;
+        }
+        metrics.recordPublish(start);
+
+        System.out.println("BANK: Sent balance change notification for client with CNP: " + notification.getCnp());
+    }
+
+    private void enqueue(BalanceChangeNotification notification) {
+        boolean[] overflow = new boolean[1];
+        pending.compute(notification.getCnp(), (cnp, current) -> {
+            if (current != null) {
+                current.merge(notification);
+                metrics.recordCoalesced();
+                return current;
+            }
+            if (!pendingCnps.offer(cnp)) {
+                overflow[0] = true;
+                return null;
+            }
+            return notification;
+        });
 
-            System.out.println("BANK: Sent balance change notification for client with CNP: " + client.getCnp());
+        if (overflow[0]) {
+            admission.publishCommitted(() -> publish(notification));
+        }
+    }
+
+    private void runPublisher() {
+        List<BalanceChangeNotification> batch = new ArrayList<>(batchSize);
+        while (running || !pendingCnps.isEmpty()) {
+            try {
+                collectBatch(batch);
+                publishBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                publishBatch(batch);
+                flush();
+                return;
+            } catch (RuntimeException e) {
+                System.out.println("BANK: Failed to publish balance change notifications: " + e.getMessage());
+            }
         }
     }
-}
 
+    /**
+     * Waits for the first pending client, then keeps collecting until the batch is full or the
+     * linger time since the first one has passed.
+     */
+    private void collectBatch(List<BalanceChangeNotification> batch) throws InterruptedException {
+        String first = pendingCnps.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        takePending(first, batch);
+
+        long deadline = System.nanoTime() + lingerNanos;
+        List<String> cnps = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize) {
+            pendingCnps.drainTo(cnps, batchSize - batch.size());
+            for (String cnp : cnps) {
+                takePending(cnp, batch);
+            }
+            cnps.clear();
+
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() == batchSize || remaining <= 0) {
+                break;
+            }
+            String next = pendingCnps.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            takePending(next, batch);
+        }
+    }
+
+    private void takePending(String cnp, List<BalanceChangeNotification> batch) {
+        BalanceChangeNotification notification = pending.remove(cnp);
+        if (notification != null) {
+            batch.add(notification);
+        }
+    }
+
+    /**
+     * Sends the batch over one channel and clears it.
+     */
+    private int publishBatch(List<BalanceChangeNotification> batch) {
+        int size = batch.size();
+        if (size == 0) {
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (BalanceChangeNotification notification : batch) {
+                    operations.convertAndSend(RabbitMQConfig.EXCHANGE_NAME, routing.routingKey(notification.getCnp()), notification);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            metrics.recordPublishFailure(size);
+            throw e;
+        } finally {
+            batch.clear();
+        }
+        metrics.recordPublish(start, size);
+
+        System.out.println("BANK: Sent " + size + " balance change notifications");
+        return size;
+    }
+}
@@ -0,0 +1,127 @@
+package com.demo.banking.service;
+
+import com.demo.banking.config.NotificationRouting;
+import com.demo.banking.config.RabbitMQConfig;
+import com.demo.banking.metrics.BankingMetrics;
+import com.demo.banking.model.BalanceChangeNotification;
+import com.demo.banking.model.OutboxMessage;
+import com.demo.banking.repository.OutboxMessageRepository;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Relays balance change notifications from the outbox table to FISC.
+ * <p>
+ * Messages are read oldest first in batches, notifications of the same client within a batch are
+ * merged into the latest state, the batch is sent over a single channel and its rows are deleted
+ * with one statement. Delivery is at least once: a failure between sending and deleting re-sends
+ * the batch on the next run, which FISC tolerates because notifications carry absolute balances.
+ * <p>
+ * While the outbox backs up, i.e. a run reads full batches or publishing fails, the remaining rows are counted
+ * after each batch. This backlog is what {@link AdmissionControl} sheds mutations on in {@code outbox} mode.
+ */
+@Component
+@ConditionalOnProperty(name = "banking.notifications.mode", havingValue = "outbox")
+public class OutboxRelay {
+    private final OutboxMessageRepository outboxRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final NotificationRouting routing;
+    private final BankingMetrics metrics;
+    private final int batchSize;
+
+    private volatile long pending;
+
+    public OutboxRelay(OutboxMessageRepository outboxRepository,
+                       RabbitTemplate rabbitTemplate,
+                       NotificationRouting routing,
+                       BankingMetrics metrics,
+                       AdmissionControl admission,
+                       @Value("${banking.outbox.batch-size:500}") int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Outbox batch size must be positive");
+        }
+
+        this.outboxRepository = outboxRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.routing = routing;
+        this.metrics = metrics;
+        this.batchSize = batchSize;
+        metrics.monitorOutboxBacklog(this::getPending);
+        admission.monitorPublishBacklog(this::getPending);
+    }
+
+    /**
+     * @return number of outbox rows waiting to be relayed when they were last counted
+     */
+    public long getPending() {
+        return pending;
+    }
+
+    /**
+     * Drains the outbox until it is empty or publishing fails.
+     *
+     * @return number of outbox messages relayed
+     */
+    @Scheduled(fixedDelayString = "${banking.outbox.relay-interval-ms:100}")
+    public int relay() {
+        int relayed = 0;
+        List<OutboxMessage> batch;
+        do {
+            batch = outboxRepository.findAllByOrderByIdAsc(Limit.of(batchSize));
+            if (batch.isEmpty()) {
+                pending = 0;
+                break;
+            }
+            if (!relayBatch(batch)) {
+                pending = outboxRepository.count();
+                break;
+            }
+            relayed += batch.size();
+            // A partial batch drained the outbox, a full one means more rows are waiting
+            pending = batch.size() < batchSize ? 0 : outboxRepository.count();
+        } while (batch.size() == batchSize);
+        return relayed;
+    }
+
+    private boolean relayBatch(List<OutboxMessage> batch) {
+        List<Long> ids = new ArrayList<>(batch.size());
+        Map<String, BalanceChangeNotification> latestByCnp = new LinkedHashMap<>();
+        for (OutboxMessage message : batch) {
+            ids.add(message.getId());
+            BalanceChangeNotification notification = message.toNotification();
+            BalanceChangeNotification previous = latestByCnp.putIfAbsent(message.getCnp(), notification);
+            if (previous != null) {
+                previous.merge(notification);
+                metrics.recordCoalesced();
+            }
+        }
+
+        long start = System.nanoTime();
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (BalanceChangeNotification notification : latestByCnp.values()) {
+                    operations.convertAndSend(RabbitMQConfig.EXCHANGE_NAME, routing.routingKey(notification.getCnp()), notification);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            metrics.recordPublishFailure(latestByCnp.size());
+            System.out.println("BANK: Failed to relay balance change notifications, will retry: " + e.getMessage());
+            return false;
+        }
+        metrics.recordPublish(start, latestByCnp.size());
+
+        outboxRepository.deleteRelayed(ids);
+        System.out.println("BANK: Relayed " + latestByCnp.size() + " balance change notifications from the outbox");
+        return true;
+    }
+}
@@ -0,0 +1,66 @@
+package com.demo.banking;
+
+import com.demo.banking.metrics.BankingMetrics;
+import com.demo.banking.model.Client;
+import com.demo.banking.model.ClientAccountInfo;
+import com.demo.banking.model.Money;
+import com.demo.banking.service.AccountInfoCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccountInfoCacheTest {
+
+    private AccountInfoCache cache;
+    private Client client;
+
+    @BeforeEach
+    void setUp() {
+        cache = new AccountInfoCache(new BankingMetrics(new SimpleMeterRegistry()), 100, 60_000);
+        client = new Client("1234567890123");
+        client.getRonAccount().setBalance(Money.of("2000.0"));
+    }
+
+    @Test
+    void shouldNotKeepViewLoadedWhileTheClientWasInvalidated() {
+        AtomicInteger loads = new AtomicInteger();
+
+        // Given a mutation that commits while the view is being loaded
+        ClientAccountInfo stale = cache.get(client.getCnp(), cnp -> {
+            loads.incrementAndGet();
+            ClientAccountInfo info = ClientAccountInfo.of(client);
+            client.getRonAccount().setBalance(Money.of("2500.0"));
+            cache.invalidate(cnp);
+            return info;
+        });
+
+        // When
+        ClientAccountInfo next = cache.get(client.getCnp(), cnp -> {
+            loads.incrementAndGet();
+            return ClientAccountInfo.of(client);
+        });
+
+        // Then the view read before the change is not served afterwards
+        assertEquals(Money.of("2000.0"), stale.ronBalance());
+        assertEquals(Money.of("2500.0"), next.ronBalance());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldRethrowLoadFailureWithoutCachingIt() {
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> cache.get("9999999999999", cnp -> {
+                loads.incrementAndGet();
+                throw new IllegalArgumentException("Client with CNP " + cnp + " not found");
+            }));
+            assertEquals("Client with CNP 9999999999999 not found", e.getMessage());
+        }
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,102 @@
+package com.demo.banking;
+
+import com.demo.banking.metrics.BankingMetrics;
+import com.demo.banking.service.AdmissionControl;
+import com.demo.banking.service.AdmissionControl.OverloadedException;
+import com.demo.banking.service.AdmissionControl.RateLimitedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControlTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private BankingMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new BankingMetrics(meterRegistry);
+    }
+
+    @Test
+    void shouldLimitEachClientToItsBurstAndTellWhenToRetry() {
+        // Given 1 request per second per client with a burst of 3, and a global burst of 5
+        AdmissionControl admission = new AdmissionControl(metrics, 1, 5, 1, 3, 100, 0, 0, 0);
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            admission.admit("1234567890123");
+        }
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> admission.admit("1234567890123"));
+
+        // Then the next request of the client is admitted in about a second, other clients are not affected
+        assertTrue(e.getRetryAfter().compareTo(Duration.ZERO) > 0 && e.getRetryAfter().compareTo(Duration.ofSeconds(1)) <= 0);
+        admission.admit("2234567890123");
+        admission.admit(null);
+        assertEquals(1, meterRegistry.get("banking.admission.shed").tag("reason", "client-rate").counter().count());
+    }
+
+    @Test
+    void shouldNotChargeClientsForGloballyRejectedRequests() {
+        // Given a global burst of 2 and a client burst of 2
+        AdmissionControl admission = new AdmissionControl(metrics, 1, 2, 1, 2, 100, 0, 0, 0);
+        admission.admit("1234567890123");
+        admission.admit("2234567890123");
+
+        // When further requests of the first client are rejected by the global limit
+        for (int i = 0; i < 5; i++) {
+            assertThrows(RateLimitedException.class, () -> admission.admit("1234567890123"));
+        }
+
+        // Then they were not counted against the client
+        assertEquals(5, meterRegistry.get("banking.admission.shed").tag("reason", "global-rate").counter().count());
+        assertEquals(0, meterRegistry.get("banking.admission.shed").tag("reason", "client-rate").counter().count());
+    }
+
+    @Test
+    void shouldShedWhileNotificationsBackUpOrThePublishWindowIsFull() throws InterruptedException {
+        // Given rate limits disabled, shedding at 2 pending notifications and a window of 1 publish
+        AdmissionControl admission = new AdmissionControl(metrics, 0, 0, 0, 0, 0, 2, 1, 10);
+        List<String> pending = new ArrayList<>(List.of("1234567890123"));
+        admission.monitorPublishBacklog(pending::size);
+        admission.checkPublishBacklog();
+        pending.add("2234567890123");
+        assertThrows(OverloadedException.class, admission::checkPublishBacklog);
+        // Requests are still admitted, only notifications are shed
+        admission.admit("3234567890123");
+
+        // When a slow publish holds the only slot
+        CountDownLatch publishing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread slow = new Thread(() -> admission.publish(() -> {
+            publishing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        slow.start();
+        assertTrue(publishing.await(5, TimeUnit.SECONDS));
+
+        // Then a publish within a transaction gives up, and one after commit waits for the slot
+        boolean[] sent = new boolean[1];
+        assertThrows(OverloadedException.class, () -> admission.publish(() -> sent[0] = true));
+        release.countDown();
+        admission.publishCommitted(() -> sent[0] = true);
+        slow.join();
+        assertTrue(sent[0]);
+        assertEquals(1, meterRegistry.get("banking.admission.shed").tag("reason", "notification-queue").counter().count());
+        assertEquals(1, meterRegistry.get("banking.admission.shed").tag("reason", "publish-window").counter().count());
+        assertEquals(0, meterRegistry.get("banking.admission.publish.in-flight").gauge().value());
+    }
+}
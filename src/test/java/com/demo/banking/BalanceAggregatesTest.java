@@ -0,0 +1,132 @@
+package com.demo.banking;
+
+import com.demo.banking.metrics.FiscMetrics;
+import com.demo.banking.model.BalanceAnalytics;
+import com.demo.banking.model.BalanceAnalytics.Scope;
+import com.demo.banking.model.BalanceAnalytics.TopBalance;
+import com.demo.banking.model.BalanceChangeNotification;
+import com.demo.banking.model.Client;
+import com.demo.banking.model.ClientAccountInfo;
+import com.demo.banking.model.Currency;
+import com.demo.banking.model.Money;
+import com.demo.banking.repository.ClientRepository;
+import com.demo.banking.service.BalanceAggregates;
+import com.demo.banking.service.BalanceAggregatesReconciler;
+import com.demo.banking.service.FiscService;
+import com.demo.banking.service.NotificationClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BalanceAggregatesTest {
+
+    @Mock
+    private ClientRepository clientRepository;
+
+    private BalanceAggregates aggregates;
+    private FiscService fiscService;
+
+    @BeforeEach
+    void setUp() {
+        aggregates = new BalanceAggregates(2);
+        fiscService = new FiscService(new FiscMetrics(new SimpleMeterRegistry()), aggregates, new NotificationClock());
+    }
+
+    @Test
+    void shouldMaintainTotalsHistogramAndTopBalancesFromDeltas() {
+        // Given 5 clients with RON balances of 10 to 50
+        for (int i = 1; i <= 5; i++) {
+            String cnp = "100000000000" + i;
+            aggregates.recordOpened(cnp);
+            aggregates.recordBalanceChange(cnp, Currency.RON, Money.ZERO, Money.ofMinor(i * 1000));
+        }
+
+        // When the largest balance drops and the smallest account is emptied and closed
+        aggregates.recordBalanceChange("1000000000005", Currency.RON, Money.ofMinor(5000), Money.ofMinor(1500));
+        aggregates.recordBalanceChange("1000000000001", Currency.RON, Money.ofMinor(1000), Money.ZERO);
+        aggregates.recordClosed("1000000000001");
+
+        // Then
+        BalanceAnalytics ron = aggregates.getAnalytics(Scope.ALL, Currency.RON, 2);
+        assertEquals(4, ron.accounts());
+        assertEquals(Money.ofMinor(2000 + 3000 + 4000 + 1500), ron.total());
+        // 1500 and 2000 are in [1024, 2048), 3000 and 4000 in [2048, 4096)
+        assertEquals(List.of(new BalanceAnalytics.Bucket(Money.ofMinor(1024), Money.ofMinor(2048), 2),
+                new BalanceAnalytics.Bucket(Money.ofMinor(2048), Money.ofMinor(4096), 2)), ron.histogram());
+        assertEquals(List.of(new TopBalance("1000000000004", Money.ofMinor(4000)),
+                new TopBalance("1000000000003", Money.ofMinor(3000))), ron.top());
+
+        BalanceAnalytics eur = aggregates.getAnalytics(Scope.ALL, Currency.EUR, 2);
+        assertEquals(4, eur.accounts());
+        assertEquals(List.of(new BalanceAnalytics.Bucket(Money.ZERO, Money.ofMinor(1), 4)), eur.histogram());
+        assertThrows(IllegalArgumentException.class, () -> aggregates.getAnalytics(Scope.ALL, Currency.RON, 3));
+    }
+
+    @Test
+    void shouldFollowTheFiscCacheForMonitoredClients() {
+        // Given a monitored client
+        Client client = new Client("1234567890123");
+        client.getRonAccount().setBalance(Money.of("2000.00"));
+        fiscService.startMonitoring(client);
+
+        // When FISC applies a notification, then stops monitoring another client that was never monitored
+        client.getRonAccount().setBalance(Money.of("2500.00"));
+        fiscService.handleBalanceChangeNotification(new BalanceChangeNotification(client, true, false));
+        fiscService.stopMonitoring("9999999999999");
+
+        // Then
+        BalanceAnalytics ron = aggregates.getAnalytics(Scope.MONITORED, Currency.RON, 1);
+        assertEquals(1, ron.accounts());
+        assertEquals(Money.of("2500.00"), ron.total());
+        assertEquals(List.of(new TopBalance("1234567890123", Money.of("2500.00"))), ron.top());
+
+        fiscService.stopMonitoring("1234567890123");
+        assertEquals(0, aggregates.getAnalytics(Scope.MONITORED, Currency.RON, 1).accounts());
+        assertEquals(0, aggregates.getAnalytics(Scope.ALL, Currency.RON, 1).accounts());
+    }
+
+    @Test
+    void shouldReplaceDriftedAggregatesWithoutLosingConcurrentChanges() {
+        // Given aggregates missing a client, and a page read during which two clients change
+        aggregates.recordOpened("1000000000001");
+        when(clientRepository.findAccountInfoAfter("", Limit.of(2))).thenAnswer(invocation -> {
+            // Before the scan reaches them: the new balance is read from the database
+            aggregates.recordBalanceChange("1000000000002", Currency.RON, Money.ZERO, Money.ofMinor(700));
+            return List.of(info("1000000000001", 0), info("1000000000002", 700));
+        });
+        when(clientRepository.findAccountInfoAfter("1000000000002", Limit.of(2))).thenAnswer(invocation -> {
+            // After the scan passed it: the change is applied to the rebuilt aggregates
+            aggregates.recordBalanceChange("1000000000001", Currency.RON, Money.ZERO, Money.ofMinor(300));
+            return List.of(info("1000000000003", 200));
+        });
+
+        // When
+        BalanceAggregatesReconciler reconciler = new BalanceAggregatesReconciler(clientRepository, fiscService,
+                aggregates, new FiscMetrics(new SimpleMeterRegistry()), 2);
+        int clients = reconciler.reconcileAll();
+
+        // Then
+        assertEquals(3, clients);
+        BalanceAnalytics ron = aggregates.getAnalytics(Scope.ALL, Currency.RON, 2);
+        assertEquals(3, ron.accounts());
+        assertEquals(Money.ofMinor(1200), ron.total());
+        assertNotNull(ron.reconciledAt());
+        assertEquals(List.of(new TopBalance("1000000000002", Money.ofMinor(700)),
+                new TopBalance("1000000000001", Money.ofMinor(300))), ron.top());
+        assertEquals(3, aggregates.getAnalytics(Scope.ALL, Currency.EUR, 0).accounts());
+    }
+
+    private static ClientAccountInfo info(String cnp, long ronMinorUnits) {
+        return new ClientAccountInfo(cnp, Money.ofMinor(ronMinorUnits), Money.ZERO, false);
+    }
+}
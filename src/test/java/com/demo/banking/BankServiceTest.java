@@ -1,12 +1,29 @@
 package com.demo.banking;
 
+import com.demo.banking.metrics.BankingMetrics;
+import com.demo.banking.model.Account;
+import com.demo.banking.model.BatchOperation;
+import com.demo.banking.model.BatchOperationResult;
 import com.demo.banking.model.Client;
+import com.demo.banking.model.ClientAccountInfo;
 import com.demo.banking.model.Currency;
+import com.demo.banking.model.Direction;
+import com.demo.banking.model.ExchangeResult;
+import com.demo.banking.model.LedgerEntryType;
+import com.demo.banking.model.Money;
+import com.demo.banking.model.OnboardingResult;
 import com.demo.banking.repository.AccountRepository;
+import com.demo.banking.repository.AccountRepository.UpdatedAccount;
 import com.demo.banking.repository.ClientRepository;
+import com.demo.banking.service.AccountInfoCache;
+import com.demo.banking.service.BalanceAggregates;
 import com.demo.banking.service.BankService;
+import com.demo.banking.service.ExchangeRates;
 import com.demo.banking.service.FiscService;
+import com.demo.banking.service.LedgerService;
 import com.demo.banking.service.NotificationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -14,8 +31,13 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -25,6 +47,9 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 public class BankServiceTest {
 
+    @Mock
+    private EntityManager entityManager;
+
     @Mock
     private ClientRepository clientRepository;
 
@@ -37,33 +62,47 @@ public class BankServiceTest {
     @Mock
     private NotificationService notificationService;
 
+    @Mock
+    private LedgerService ledgerService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @Captor
-    private ArgumentCaptor<BigDecimal> previousRonBalanceCaptor;
+    private ArgumentCaptor<Money> previousRonBalanceCaptor;
 
     @Captor
-    private ArgumentCaptor<BigDecimal> previousEuroBalanceCaptor;
+    private ArgumentCaptor<Money> previousEuroBalanceCaptor;
 
+    private SimpleMeterRegistry meterRegistry;
     private BankService bankService;
     private Client testClient;
 
     @BeforeEach
     void setUp() {
-        bankService = new BankService(clientRepository, accountRepository, fiscService, notificationService);
+        meterRegistry = new SimpleMeterRegistry();
+        BankingMetrics metrics = new BankingMetrics(meterRegistry);
+        ExchangeRates exchangeRates = new ExchangeRates(new MockEnvironment()
+                .withProperty("banking.exchange.eur-ron-rate", "5.00")
+                .withProperty("banking.exchange.spread", "0.02"), 60_000);
+        bankService = new BankService(entityManager, clientRepository, accountRepository, fiscService, notificationService,
+                ledgerService, new AccountInfoCache(metrics, 100, 60_000), new BalanceAggregates(10), exchangeRates, metrics,
+                transactionManager);
 
         // Create a test client
         testClient = new Client("1234567890123");
-        testClient.getRonAccount().setBalance(new BigDecimal("2000.0"));
-        testClient.getEuroAccount().setBalance(new BigDecimal("1000.0"));
+        testClient.getRonAccount().setBalance(Money.of("2000.0"));
+        testClient.getEuroAccount().setBalance(Money.of("1000.0"));
         testClient.setMonitored(true);
 
         // Mock repository behavior
-        when(clientRepository.findById("1234567890123")).thenReturn(Optional.of(testClient));
+        lenient().when(clientRepository.findById("1234567890123")).thenReturn(Optional.of(testClient));
     }
 
     @Test
     void shouldDepositAndNotifyWhenMonitored() {
         // When
-        bankService.deposit("1234567890123", Currency.RON, new BigDecimal("500.0"));
+        bankService.deposit("1234567890123", Currency.RON, Money.of("500.0"));
 
         // Then
         verify(notificationService).notifyBalanceChange(
@@ -72,20 +111,56 @@ public class BankServiceTest {
                 previousEuroBalanceCaptor.capture()
         );
 
-        assertEquals(new BigDecimal("2000.0"), previousRonBalanceCaptor.getValue());
-        assertEquals(new BigDecimal("1000.0"), previousEuroBalanceCaptor.getValue());
-        assertEquals(new BigDecimal("2500.0"), testClient.getRonAccount().getBalance());
+        assertEquals(Money.of("2000.0"), previousRonBalanceCaptor.getValue());
+        assertEquals(Money.of("1000.0"), previousEuroBalanceCaptor.getValue());
+        assertEquals(Money.of("2500.0"), testClient.getRonAccount().getBalance());
+        verify(ledgerService).record("1234567890123", testClient.getRonAccount(),
+                LedgerEntryType.DEPOSIT, Money.of("500.0"));
     }
 
     @Test
     void shouldThrowExceptionWhenWithdrawingBelowMinimumBalance() {
         // When/Then
         Exception exception = assertThrows(IllegalStateException.class, () -> {
-            bankService.withdraw("1234567890123", Currency.RON, new BigDecimal("1500.0"));
+            bankService.withdraw("1234567890123", Currency.RON, Money.of("1500.0"));
         });
 
         assertTrue(exception.getMessage().contains("cannot go below"));
         verifyNoInteractions(notificationService);
+        assertEquals(1, meterRegistry.get("banking.operation")
+                .tags("operation", "withdraw", "currency", "RON", "outcome", "rejected")
+                .timer().count());
+        // Combinations an operation cannot produce are not registered
+        assertNull(meterRegistry.find("banking.operation").tags("operation", "withdraw", "currency", "none").timer());
+        assertNull(meterRegistry.find("banking.operation").tags("operation", "account-info", "currency", "EUR").timer());
+    }
+
+    @Test
+    void shouldExchangeBetweenAccountsWithASingleNotification() {
+        // When 1000 RON are sold at the ask rate of 5.05 RON per EUR
+        ExchangeResult result = bankService.exchange("1234567890123", Currency.RON, Money.of("1000.0"));
+
+        // Then
+        assertEquals(Money.of("198.01"), result.credited());
+        assertEquals(new BigDecimal("5.050000"), result.rate());
+        assertEquals(Money.of("1000.0"), testClient.getRonAccount().getBalance());
+        assertEquals(Money.of("1198.01"), testClient.getEuroAccount().getBalance());
+        verify(ledgerService).record("1234567890123", testClient.getRonAccount(),
+                LedgerEntryType.EXCHANGE, Money.of("-1000.0"));
+        verify(ledgerService).record("1234567890123", testClient.getEuroAccount(),
+                LedgerEntryType.EXCHANGE, Money.of("198.01"));
+        verify(notificationService, times(1)).notifyBalanceChange(testClient, Money.of("2000.0"), Money.of("1000.0"));
+    }
+
+    @Test
+    void shouldRejectExchangeBelowMinimumBalance() {
+        // When/Then
+        assertThrows(IllegalStateException.class,
+                () -> bankService.exchange("1234567890123", Currency.EUR, Money.of("500.0")));
+
+        assertEquals(Money.of("1000.0"), testClient.getEuroAccount().getBalance());
+        assertEquals(Money.of("2000.0"), testClient.getRonAccount().getBalance());
+        verifyNoInteractions(ledgerService, notificationService);
     }
 
     @Test
@@ -107,4 +182,178 @@ public class BankServiceTest {
         // Verify FISC monitoring wasn't affected
         verify(fiscService, never()).stopMonitoring(anyString());
     }
+
+    @Test
+    void shouldApplyBatchAndReportPerOperationResults() {
+        // Given
+        when(clientRepository.findAllWithAccounts(anyCollection())).thenReturn(List.of(testClient));
+
+        // When
+        List<BatchOperationResult> results = bankService.processBatch(List.of(
+                new BatchOperation("1234567890123", Currency.RON, new BigDecimal("500.0"), Direction.DEPOSIT),
+                new BatchOperation("1234567890123", Currency.EUR, new BigDecimal("500.0"), Direction.WITHDRAW),
+                new BatchOperation("9999999999999", Currency.RON, new BigDecimal("100.0"), Direction.DEPOSIT),
+                new BatchOperation("1234567890123", Currency.RON, new BigDecimal("1000.0"), Direction.WITHDRAW)
+        ));
+
+        // Then
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(1).getMessage().contains("cannot go below"));
+        assertFalse(results.get(2).isSuccess());
+        assertTrue(results.get(3).isSuccess());
+
+        // The rejected withdrawal leaves the EUR balance untouched
+        assertEquals(Money.of("1500.0"), testClient.getRonAccount().getBalance());
+        assertEquals(Money.of("1000.0"), testClient.getEuroAccount().getBalance());
+
+        // A single notification carries the balances from before the batch
+        verify(notificationService).notifyBalanceChange(
+                eq(testClient),
+                previousRonBalanceCaptor.capture(),
+                previousEuroBalanceCaptor.capture()
+        );
+        assertEquals(Money.of("2000.0"), previousRonBalanceCaptor.getValue());
+        assertEquals(Money.of("1000.0"), previousEuroBalanceCaptor.getValue());
+    }
+
+    @Test
+    void shouldRejectOperationsThatOverflowTheBalance() {
+        // Given
+        when(clientRepository.findAllWithAccounts(anyCollection())).thenReturn(List.of(testClient));
+        when(clientRepository.findById("1234567890123")).thenReturn(Optional.of(testClient));
+        BigDecimal max = Money.ofMinor(Long.MAX_VALUE).toBigDecimal();
+
+        // When
+        List<BatchOperationResult> results = bankService.processBatch(List.of(
+                new BatchOperation("1234567890123", Currency.RON, max, Direction.DEPOSIT),
+                new BatchOperation("1234567890123", Currency.RON, new BigDecimal("100.0"), Direction.DEPOSIT)
+        ));
+
+        // Then the overflowing operation fails on its own and the balance is untouched
+        assertFalse(results.get(0).isSuccess());
+        assertEquals(BankService.OUT_OF_RANGE, results.get(0).getMessage());
+        assertTrue(results.get(1).isSuccess());
+        assertEquals(Money.of("2100.0"), testClient.getRonAccount().getBalance());
+        assertThrows(ArithmeticException.class, () -> bankService.deposit("1234567890123", Currency.RON, Money.of(max)));
+        assertEquals(Money.of("2100.0"), testClient.getRonAccount().getBalance());
+    }
+
+    @Test
+    void shouldUseSingleStatementUpdateForUnmonitoredClient() {
+        // Given the state returned by the conditional update
+        UpdatedAccount updated = mock(UpdatedAccount.class);
+        when(updated.getId()).thenReturn(1L);
+        when(updated.getBalance()).thenReturn(Money.of("1000.0").minorUnits());
+        when(updated.getLedgerSequence()).thenReturn(7L);
+        when(accountRepository.withdrawIfNotMonitored("1234567890123", "RON", Money.of("1000.0").minorUnits(),
+                Money.of("2000.0").minorUnits()))
+                .thenReturn(Optional.of(updated));
+
+        // When
+        bankService.withdraw("1234567890123", Currency.RON, Money.of("1000.0"));
+
+        // Then the ledger entry is recorded from it, without reading the account back
+        verify(clientRepository, never()).findById(anyString());
+        verify(accountRepository, never()).save(any());
+        verify(ledgerService).recordApplied("1234567890123", 1L, Currency.RON, 7L,
+                LedgerEntryType.WITHDRAWAL, Money.of("-1000.0"), Money.of("1000.0"));
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void shouldServeRepeatedAccountInfoReadsFromCache() {
+        // Given
+        when(clientRepository.findAccountInfo("1234567890123"))
+                .thenReturn(Optional.of(ClientAccountInfo.of(testClient)));
+
+        // When
+        ClientAccountInfo first = bankService.getAccountInfo("1234567890123");
+        ClientAccountInfo second = bankService.getAccountInfo("1234567890123");
+
+        // Then
+        assertSame(first, second);
+        assertEquals(Money.of("2000.0"), second.ronBalance());
+        assertTrue(second.monitored());
+        verify(clientRepository, times(1)).findAccountInfo("1234567890123");
+        verify(clientRepository, never()).findById(anyString());
+        assertEquals(1, meterRegistry.get("cache.gets").tags("cache", "account-info", "result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void shouldReloadAccountInfoAfterDeposit() {
+        // Given
+        when(clientRepository.findAccountInfo("1234567890123"))
+                .thenAnswer(invocation -> Optional.of(ClientAccountInfo.of(testClient)));
+        bankService.getAccountInfo("1234567890123");
+
+        // When
+        bankService.deposit("1234567890123", Currency.RON, Money.of("500.0"));
+        ClientAccountInfo info = bankService.getAccountInfo("1234567890123");
+
+        // Then
+        assertEquals(Money.of("2500.0"), info.ronBalance());
+        assertEquals(Money.of("1000.0"), info.euroBalance());
+    }
+
+    @Test
+    void shouldNotCacheUnknownClients() {
+        // Given
+        when(clientRepository.findAccountInfo("9999999999999")).thenReturn(Optional.empty());
+
+        // When/Then
+        assertThrows(IllegalArgumentException.class, () -> bankService.getAccountInfo("9999999999999"));
+        assertThrows(IllegalArgumentException.class, () -> bankService.getAccountInfo("9999999999999"));
+        verify(clientRepository, times(2)).findAccountInfo("9999999999999");
+    }
+
+    @Test
+    void shouldOnboardOnlyNewClientsWithOneExistenceCheck() {
+        // Given
+        when(clientRepository.findExistingCnps(List.of("1234567890123", "2000000000001", "2000000000002")))
+                .thenReturn(List.of("1234567890123"));
+
+        // When
+        OnboardingResult result = bankService.onboardClients(
+                List.of("1234567890123", "2000000000001", "2000000000002", "2000000000001"));
+
+        // Then
+        assertEquals(2, result.created());
+        assertEquals(List.of("1234567890123"), result.existing());
+        assertEquals(List.of(), result.notOnboarded());
+        ArgumentCaptor<Client> captor = ArgumentCaptor.forClass(Client.class);
+        verify(entityManager, times(2)).persist(captor.capture());
+        assertEquals("2000000000001", captor.getAllValues().get(0).getCnp());
+        assertEquals(Money.ZERO, captor.getAllValues().get(0).getRonAccount().getBalance());
+        verify(entityManager).flush();
+        verify(entityManager).clear();
+        verify(clientRepository, never()).save(any());
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void shouldKeepCommittedChunksWhenOnboardingFails() {
+        // Given 1500 new CNPs, of which the second chunk of 500 cannot be loaded
+        List<String> cnps = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            cnps.add(String.valueOf(3000000000000L + i));
+        }
+        when(clientRepository.findExistingCnps(anyList()))
+                .thenReturn(List.of())
+                .thenThrow(new DataAccessResourceFailureException("Connection lost"));
+
+        // When
+        BankService.OnboardingException e = assertThrows(BankService.OnboardingException.class,
+                () -> bankService.onboardClients(cnps));
+
+        // Then the first chunk stays committed and the rest is reported as not onboarded
+        assertEquals(1000, e.getResult().created());
+        assertEquals(List.of(), e.getResult().existing());
+        assertEquals(cnps.subList(1000, 1500), e.getResult().notOnboarded());
+        verify(entityManager, times(1000)).persist(any(Client.class));
+        verify(transactionManager).commit(any());
+        verify(transactionManager).rollback(any());
+    }
 }
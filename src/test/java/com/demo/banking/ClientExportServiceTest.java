@@ -0,0 +1,65 @@
+package com.demo.banking;
+
+import com.demo.banking.model.ClientAccountInfo;
+import com.demo.banking.model.Money;
+import com.demo.banking.repository.ClientRepository;
+import com.demo.banking.service.ClientExportService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ClientExportServiceTest {
+
+    @Mock
+    private ClientRepository clientRepository;
+
+    @Test
+    void shouldWriteOneJsonLinePerClientPageByPage() throws Exception {
+        // Given two full pages and a partial one
+        when(clientRepository.findAccountInfoAfter("", Limit.of(2))).thenReturn(List.of(
+                info("1000000000001", "1000.00", true), info("1000000000002", "0", false)));
+        when(clientRepository.findAccountInfoAfter("1000000000002", Limit.of(2))).thenReturn(List.of(
+                info("1000000000003", "2500.50", false), info("1000000000004", "1200", false)));
+        when(clientRepository.findAccountInfoAfter("1000000000004", Limit.of(2))).thenReturn(List.of(
+                info("1000000000005", "1000", true)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long written = new ClientExportService(clientRepository, new ObjectMapper(), 2).writeNdjson(out);
+
+        // Then
+        assertEquals(5, written);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n", -1);
+        assertEquals(6, lines.length);
+        assertEquals("{\"cnp\":\"1000000000001\",\"ronBalance\":1000.00,\"euroBalance\":0.00,\"monitored\":true}", lines[0]);
+        assertEquals("{\"cnp\":\"1000000000003\",\"ronBalance\":2500.50,\"euroBalance\":0.00,\"monitored\":false}", lines[2]);
+        assertEquals("", lines[5]);
+        verify(clientRepository, times(3)).findAccountInfoAfter(anyString(), eq(Limit.of(2)));
+    }
+
+    @Test
+    void shouldStopAfterEmptyPage() throws Exception {
+        when(clientRepository.findAccountInfoAfter("", Limit.of(2))).thenReturn(List.of(
+                info("1000000000001", "1000", false), info("1000000000002", "1000", false)));
+        when(clientRepository.findAccountInfoAfter("1000000000002", Limit.of(2))).thenReturn(List.of());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(2, new ClientExportService(clientRepository, new ObjectMapper(), 2).writeNdjson(out));
+        assertEquals(2, out.toString(StandardCharsets.UTF_8).lines().count());
+    }
+
+    private static ClientAccountInfo info(String cnp, String ronBalance, boolean monitored) {
+        return new ClientAccountInfo(cnp, Money.of(ronBalance), Money.ZERO, monitored);
+    }
+}
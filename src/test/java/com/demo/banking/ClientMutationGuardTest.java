@@ -0,0 +1,81 @@
+package com.demo.banking;
+
+import com.demo.banking.service.ClientMutationGuard;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClientMutationGuardTest {
+
+    @Test
+    void shouldSerializeMutationsOfTheSameClientInStripedMode() throws InterruptedException {
+        ClientMutationGuard guard = new ClientMutationGuard(ClientMutationGuard.Mode.STRIPED, 16, 0);
+        int[] balance = {0};
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 10_000; i++) {
+            // Unsynchronized read-modify-write, only safe because the guard serializes it
+            executor.execute(() -> guard.run("1234567890123", () -> balance[0] = balance[0] + 1));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(10_000, balance[0]);
+    }
+
+    @Test
+    void shouldLockAllClientsOfABatch() throws Exception {
+        ClientMutationGuard guard = new ClientMutationGuard(ClientMutationGuard.Mode.STRIPED, 16, 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicReference<Future<String>> concurrent = new AtomicReference<>();
+
+        String result = guard.execute(Arrays.asList("1234567890123", null, "2234567890123", "1234567890123"), () -> {
+            // A mutation of a client of the batch waits until the batch is done
+            concurrent.set(executor.submit(() -> guard.execute("2234567890123", () -> "after")));
+            assertThrows(TimeoutException.class, () -> concurrent.get().get(200, TimeUnit.MILLISECONDS));
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals("after", concurrent.get().get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    void shouldRetryOptimisticConflictsUntilSuccess() {
+        ClientMutationGuard guard = new ClientMutationGuard(ClientMutationGuard.Mode.OPTIMISTIC, 16, 3);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = guard.execute("1234567890123", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new OptimisticLockingFailureException("conflict");
+            }
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void shouldGiveUpAfterMaxRetries() {
+        ClientMutationGuard guard = new ClientMutationGuard(ClientMutationGuard.Mode.OPTIMISTIC, 16, 2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(OptimisticLockingFailureException.class, () -> guard.run("1234567890123", () -> {
+            attempts.incrementAndGet();
+            throw new OptimisticLockingFailureException("conflict");
+        }));
+        assertEquals(3, attempts.get());
+    }
+}
@@ -0,0 +1,61 @@
+package com.demo.banking;
+
+import com.demo.banking.model.Currency;
+import com.demo.banking.model.ExchangeRate;
+import com.demo.banking.service.ExchangeRates;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExchangeRatesTest {
+
+    @Test
+    void shouldApplyPublishedRatesAndKeepThemOnInvalidPublications() {
+        // Given
+        ExchangeRates exchangeRates = new ExchangeRates(configured("5.00"), 60_000);
+        assertEquals(new BigDecimal("5.000000"), exchangeRates.current().rateFor(Currency.EUR));
+
+        // When
+        ExchangeRate published = exchangeRates.publish(new BigDecimal("4.90"), new BigDecimal("0.02"));
+
+        // Then
+        assertSame(published, exchangeRates.current());
+        assertEquals(new BigDecimal("4.851000"), exchangeRates.current().rateFor(Currency.EUR));
+        assertThrows(IllegalArgumentException.class, () -> exchangeRates.publish(new BigDecimal("-1"), BigDecimal.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> exchangeRates.publish(new BigDecimal("4.90"), null));
+        assertSame(published, exchangeRates.current());
+    }
+
+    @Test
+    void shouldExpireOnlyPublishedRates() throws Exception {
+        // Given rates that are older than the max age
+        ExchangeRates configured = new ExchangeRates(configured("5.00"), 100);
+        ExchangeRates published = new ExchangeRates(configured("5.00"), 100);
+        published.publish(new BigDecimal("4.90"), BigDecimal.ZERO);
+        Thread.sleep(150);
+
+        // Then the configured rate still applies, while the feed that stopped publishing is rejected
+        assertNotNull(configured.current());
+        assertThrows(IllegalStateException.class, published::current);
+
+        // When the feed publishes again, exchanges resume
+        published.publish(new BigDecimal("4.95"), BigDecimal.ZERO);
+        assertEquals(new BigDecimal("4.950000"), published.current().rateFor(Currency.RON));
+    }
+
+    @Test
+    void shouldRejectExchangesUntilAValidRateIsPublished() {
+        ExchangeRates exchangeRates = new ExchangeRates(new MockEnvironment(), 60_000);
+        assertThrows(IllegalStateException.class, exchangeRates::current);
+
+        exchangeRates.publish(new BigDecimal("4.97"), BigDecimal.ZERO);
+        assertNotNull(exchangeRates.current());
+    }
+
+    private static MockEnvironment configured(String rate) {
+        return new MockEnvironment().withProperty("banking.exchange.eur-ron-rate", rate);
+    }
+}
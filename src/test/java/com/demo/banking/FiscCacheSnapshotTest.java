@@ -0,0 +1,114 @@
+package com.demo.banking;
+
+import com.demo.banking.metrics.FiscMetrics;
+import com.demo.banking.model.BalanceChangeNotification;
+import com.demo.banking.model.Client;
+import com.demo.banking.model.Money;
+import com.demo.banking.model.MonitoredBalance;
+import com.demo.banking.service.BalanceAggregates;
+import com.demo.banking.service.FiscCacheSnapshot;
+import com.demo.banking.service.FiscService;
+import com.demo.banking.service.NotificationClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FiscCacheSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldRestoreMonitoredClientsAndDropNotificationsAlreadyInTheSnapshot() throws Exception {
+        Path path = directory.resolve("fisc.snapshot");
+        FiscService before = newFiscService();
+        Client client = new Client("1234567890123");
+        client.getRonAccount().setBalance(Money.of("2000.0"));
+        before.startMonitoring(client);
+        long started = before.getMonitoredBalance("1234567890123").sequence();
+        before.handleBalanceChangeNotification(notification("1234567890123", "2500.0", started + 2));
+        before.restoreMonitoredBalance("2234567890123", new MonitoredBalance(Money.of("10.5"), Money.of("3.25"), 3));
+
+        assertEquals(2, new FiscCacheSnapshot(before, new FiscMetrics(new SimpleMeterRegistry()), path).write());
+
+        // When FISC restarts and the queue still holds a notification the snapshot already contains
+        FiscService after = newFiscService();
+        FiscCacheSnapshot restored = new FiscCacheSnapshot(after, new FiscMetrics(new SimpleMeterRegistry()), path);
+        assertEquals(2, restored.restore());
+        assertTrue(restored.isRestored());
+        after.handleBalanceChangeNotification(notification("1234567890123", "2100.0", started + 1));
+
+        // Then
+        assertEquals(before.getMonitoredBalances(), after.getMonitoredBalances());
+        assertEquals(Money.of("2500.0"), after.getMonitoredBalance("1234567890123").ronBalance());
+    }
+
+    @Test
+    void shouldTrustOnlySnapshotsWrittenOnACleanShutdown() throws Exception {
+        // Given
+        Path path = directory.resolve("fisc.snapshot");
+        FiscService fiscService = newFiscService();
+        fiscService.restoreMonitoredBalance("1234567890123", new MonitoredBalance(Money.of("2000.0"), Money.ZERO, 1));
+        FiscCacheSnapshot snapshot = new FiscCacheSnapshot(fiscService, new FiscMetrics(new SimpleMeterRegistry()), path);
+
+        // When only a periodic snapshot was written before the process stopped
+        snapshot.write();
+        FiscCacheSnapshot afterCrash = new FiscCacheSnapshot(newFiscService(), new FiscMetrics(new SimpleMeterRegistry()), path);
+        assertEquals(1, afterCrash.restore());
+
+        // Then it is restored but not trusted to be complete
+        assertTrue(afterCrash.isRestored());
+        assertFalse(afterCrash.isCleanShutdown());
+
+        // When the snapshot was written on shutdown
+        snapshot.writeOnShutdown();
+        FiscCacheSnapshot afterShutdown = new FiscCacheSnapshot(newFiscService(), new FiscMetrics(new SimpleMeterRegistry()), path);
+        assertEquals(1, afterShutdown.restore());
+
+        // Then it is trusted once, the marker being consumed so a later crash does not leave it behind
+        assertTrue(afterShutdown.isCleanShutdown());
+        assertFalse(Files.exists(directory.resolve("fisc.snapshot.clean")));
+        FiscCacheSnapshot afterLaterCrash = new FiscCacheSnapshot(newFiscService(), new FiscMetrics(new SimpleMeterRegistry()), path);
+        assertEquals(1, afterLaterCrash.restore());
+        assertFalse(afterLaterCrash.isCleanShutdown());
+    }
+
+    @Test
+    void shouldIgnoreCorruptSnapshot() throws Exception {
+        Path path = directory.resolve("fisc.snapshot");
+        FiscService fiscService = newFiscService();
+        fiscService.restoreMonitoredBalance("1234567890123", new MonitoredBalance(Money.of("2000.0"), Money.ZERO, 1));
+        FiscCacheSnapshot snapshot = new FiscCacheSnapshot(fiscService, new FiscMetrics(new SimpleMeterRegistry()), path);
+        snapshot.write();
+
+        byte[] content = Files.readAllBytes(path);
+        content[content.length - 1] ^= 1;
+        Files.write(path, content);
+
+        FiscService restarted = newFiscService();
+        FiscCacheSnapshot ignored = new FiscCacheSnapshot(restarted, new FiscMetrics(new SimpleMeterRegistry()), path);
+        assertEquals(0, ignored.restore());
+        assertFalse(ignored.isRestored());
+        assertTrue(restarted.getMonitoredBalances().isEmpty());
+    }
+
+    private static FiscService newFiscService() {
+        return new FiscService(new FiscMetrics(new SimpleMeterRegistry()), new BalanceAggregates(10),
+                new NotificationClock());
+    }
+
+    private static BalanceChangeNotification notification(String cnp, String ronBalance, long sequence) {
+        BalanceChangeNotification notification = new BalanceChangeNotification();
+        notification.setCnp(cnp);
+        notification.setRonBalance(Money.of(ronBalance));
+        notification.setEuroBalance(Money.ZERO);
+        notification.setRonChanged(true);
+        notification.setSequence(sequence);
+        return notification;
+    }
+}
@@ -1,24 +1,30 @@
 package com.demo.banking;
 
+import com.demo.banking.metrics.FiscMetrics;
 import com.demo.banking.model.BalanceChangeNotification;
 import com.demo.banking.model.Client;
+import com.demo.banking.model.Money;
+import com.demo.banking.model.MonitoredBalance;
+import com.demo.banking.service.BalanceAggregates;
 import com.demo.banking.service.FiscService;
+import com.demo.banking.service.NotificationClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.lang.reflect.Field;
-import java.math.BigDecimal;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(MockitoExtension.class)
 public class FiscServiceTest {
 
-    @InjectMocks
+    private SimpleMeterRegistry meterRegistry;
     private FiscService fiscService;
 
     private Client testClient;
@@ -26,17 +32,21 @@ public class FiscServiceTest {
 
     @BeforeEach
     void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        fiscService = new FiscService(new FiscMetrics(meterRegistry), new BalanceAggregates(10),
+                new NotificationClock());
+
         // Create a test client
         testClient = new Client("1234567890123");
-        testClient.getRonAccount().setBalance(new BigDecimal("2000.0"));
-        testClient.getEuroAccount().setBalance(new BigDecimal("1000.0"));
+        testClient.getRonAccount().setBalance(Money.of("2000.0"));
+        testClient.getEuroAccount().setBalance(Money.of("1000.0"));
         testClient.setMonitored(true);
 
         // Create a test notification
         notification = new BalanceChangeNotification();
         notification.setCnp("1234567890123");
-        notification.setRonBalance(new BigDecimal("2500.0"));
-        notification.setEuroBalance(new BigDecimal("1000.0"));
+        notification.setRonBalance(Money.of("2500.0"));
+        notification.setEuroBalance(Money.of("1000.0"));
         notification.setRonChanged(true);
         notification.setEuroChanged(false);
     }
@@ -47,32 +57,138 @@ public class FiscServiceTest {
         fiscService.startMonitoring(testClient);
 
         // Verify client is monitored
-        Client cachedClient = getMonitoredClient("1234567890123");
-        assertNotNull(cachedClient);
-        assertEquals("1234567890123", cachedClient.getCnp());
-        assertEquals(new BigDecimal("2000.0"), cachedClient.getRonAccount().getBalance());
+        MonitoredBalance cachedBalance = fiscService.getMonitoredBalance("1234567890123");
+        assertNotNull(cachedBalance);
+        assertEquals(Money.of("2000.0"), cachedBalance.ronBalance());
+        assertEquals(Money.of("1000.0"), cachedBalance.euroBalance());
 
         // Stop monitoring
         fiscService.stopMonitoring("1234567890123");
 
         // Verify client is no longer monitored
-        assertNull(getMonitoredClient("1234567890123"));
+        assertNull(fiscService.getMonitoredBalance("1234567890123"));
+    }
+
+    @Test
+    void shouldRecordConsumedAndIgnoredNotifications() {
+        // Given
+        fiscService.startMonitoring(testClient);
+        assertEquals(1, meterRegistry.get("fisc.monitored.clients").gauge().value());
+
+        // When
+        fiscService.handleBalanceChangeNotification(notification);
+        BalanceChangeNotification other = new BalanceChangeNotification();
+        other.setCnp("9999999999999");
+        fiscService.handleBalanceChangeNotification(other);
+
+        // Then
+        assertEquals(1, meterRegistry.get("fisc.notification.consume").timer().count());
+        assertEquals(1, meterRegistry.get("fisc.notification.ignored").counter().count());
+        assertEquals(Money.of("2500.0"), fiscService.getMonitoredBalance("1234567890123").ronBalance());
     }
 
-    /**
-     * Helper method to access the private monitoredClients map in FiscService
-     */
-    @SuppressWarnings("unchecked")
-    private Client getMonitoredClient(String cnp) {
+    @Test
+    void shouldNotLoseChangesOfDifferentCurrenciesUnderConcurrentListeners() throws Exception {
+        // Given
+        fiscService.startMonitoring(testClient);
+        BalanceChangeNotification euroNotification = new BalanceChangeNotification();
+        euroNotification.setCnp("1234567890123");
+        euroNotification.setEuroBalance(Money.of("500.0"));
+        euroNotification.setEuroChanged(true);
+
+        // When one listener thread applies RON changes while another applies EUR changes
+        ExecutorService executor = Executors.newFixedThreadPool(2);
         try {
-            Field monitoredClientsField = FiscService.class.getDeclaredField("monitoredClients");
-            monitoredClientsField.setAccessible(true);
-            Map<String, Client> monitoredClients = (Map<String, Client>) monitoredClientsField.get(fiscService);
-            return monitoredClients.get(cnp);
-        } catch (Exception e) {
-            fail("Failed to access monitoredClients field: " + e.getMessage());
-            return null;
+            Future<?> ron = executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    fiscService.handleBalanceChangeNotification(notification);
+                }
+            });
+            Future<?> euro = executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    fiscService.handleBalanceChangeNotification(euroNotification);
+                }
+            });
+            ron.get();
+            euro.get();
+        } finally {
+            executor.shutdown();
         }
+
+        // Then both changes are present
+        MonitoredBalance cachedBalance = fiscService.getMonitoredBalance("1234567890123");
+        assertEquals(Money.of("2500.0"), cachedBalance.ronBalance());
+        assertEquals(Money.of("500.0"), cachedBalance.euroBalance());
     }
-}
 
+    @Test
+    void shouldCollapseBatchToLatestSequencePerClient() {
+        // Given
+        fiscService.startMonitoring(testClient);
+        long started = fiscService.getMonitoredBalance("1234567890123").sequence();
+        BalanceChangeNotification first = sequenced(started + 1, "2100.0", "1000.0", true, false);
+        BalanceChangeNotification third = sequenced(started + 3, "2100.0", "800.0", false, true);
+        BalanceChangeNotification second = sequenced(started + 2, "2100.0", "900.0", false, true);
+        BalanceChangeNotification other = sequenced(started + 4, "1.0", "1.0", true, true);
+        other.setCnp("9999999999999");
+
+        // When the updates of the client arrive out of order within one batch
+        fiscService.handleBalanceChangeNotifications(List.of(first, third, second, other));
+
+        // Then the latest state is applied once
+        MonitoredBalance cachedBalance = fiscService.getMonitoredBalance("1234567890123");
+        assertEquals(Money.of("2100.0"), cachedBalance.ronBalance());
+        assertEquals(Money.of("800.0"), cachedBalance.euroBalance());
+        assertEquals(started + 3, cachedBalance.sequence());
+        assertEquals(2, meterRegistry.get("fisc.notification.coalesced").counter().count());
+        assertEquals(1, meterRegistry.get("fisc.notification.ignored").counter().count());
+        assertEquals(1, meterRegistry.get("fisc.notification.consume").timer().count());
+    }
+
+    @Test
+    void shouldDropNotificationOlderThanCachedState() {
+        // Given
+        fiscService.startMonitoring(testClient);
+        long started = fiscService.getMonitoredBalance("1234567890123").sequence();
+        fiscService.handleBalanceChangeNotification(sequenced(started + 5, "2100.0", "700.0", false, true));
+
+        // When a slower consumer delivers an earlier change, and the last one is redelivered
+        fiscService.handleBalanceChangeNotification(sequenced(started + 4, "2100.0", "1000.0", true, false));
+        fiscService.handleBalanceChangeNotification(sequenced(started + 5, "2100.0", "700.0", false, true));
+
+        // Then
+        MonitoredBalance cachedBalance = fiscService.getMonitoredBalance("1234567890123");
+        assertEquals(Money.of("700.0"), cachedBalance.euroBalance());
+        assertEquals(started + 5, cachedBalance.sequence());
+        assertEquals(2, meterRegistry.get("fisc.notification.stale").counter().count());
+        assertEquals(1, meterRegistry.get("fisc.notification.consume").timer().count());
+    }
+
+    @Test
+    void shouldDropNotificationsIssuedBeforeMonitoringStarted() {
+        // Given a notification of an earlier change still queued, e.g. from an outbox backlog
+        NotificationClock clock = new NotificationClock();
+        fiscService = new FiscService(new FiscMetrics(meterRegistry), new BalanceAggregates(10), clock);
+        BalanceChangeNotification queued = sequenced(clock.next(), "1500.0", "1000.0", true, false);
+
+        // When monitoring starts from the current balances before it is delivered
+        fiscService.startMonitoring(testClient);
+        fiscService.handleBalanceChangeNotification(queued);
+
+        // Then the balances read at start are kept
+        assertEquals(Money.of("2000.0"), fiscService.getMonitoredBalance("1234567890123").ronBalance());
+        assertEquals(1, meterRegistry.get("fisc.notification.stale").counter().count());
+    }
+
+    private BalanceChangeNotification sequenced(long sequence, String ron, String euro,
+                                                boolean ronChanged, boolean euroChanged) {
+        BalanceChangeNotification sequenced = new BalanceChangeNotification();
+        sequenced.setCnp("1234567890123");
+        sequenced.setRonBalance(Money.of(ron));
+        sequenced.setEuroBalance(Money.of(euro));
+        sequenced.setRonChanged(ronChanged);
+        sequenced.setEuroChanged(euroChanged);
+        sequenced.setSequence(sequence);
+        return sequenced;
+    }
+}
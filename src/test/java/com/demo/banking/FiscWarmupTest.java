@@ -0,0 +1,159 @@
+package com.demo.banking;
+
+import com.demo.banking.metrics.FiscMetrics;
+import com.demo.banking.model.BalanceChangeNotification;
+import com.demo.banking.model.ClientAccountInfo;
+import com.demo.banking.model.Money;
+import com.demo.banking.model.MonitoredBalance;
+import com.demo.banking.repository.ClientRepository;
+import com.demo.banking.service.BalanceAggregates;
+import com.demo.banking.service.FiscCacheSnapshot;
+import com.demo.banking.service.FiscService;
+import com.demo.banking.service.FiscWarmup;
+import com.demo.banking.service.NotificationClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Limit;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class FiscWarmupTest {
+
+    @Mock
+    private ClientRepository clientRepository;
+
+    @Mock
+    private ObjectProvider<FiscCacheSnapshot> snapshotProvider;
+
+    @Mock
+    private FiscCacheSnapshot snapshot;
+
+    private FiscService fiscService;
+
+    @BeforeEach
+    void setUp() {
+        fiscService = new FiscService(new FiscMetrics(new SimpleMeterRegistry()), new BalanceAggregates(10),
+                new NotificationClock());
+    }
+
+    @Test
+    void shouldLoadEveryMonitoredClientPageByPage() {
+        // Given 3 monitored clients read in pages of 2, and a snapshot entry of a client no longer monitored
+        when(clientRepository.findMonitoredAfter("", Limit.of(2)))
+                .thenReturn(List.of(info("1000000000001", "2000.0"), info("1000000000002", "3000.0")));
+        when(clientRepository.findMonitoredAfter("1000000000002", Limit.of(2)))
+                .thenReturn(List.of(info("1000000000003", "4000.0")));
+        fiscService.restoreMonitoredBalance("9000000000009", new MonitoredBalance(Money.of("1.0"), Money.ZERO, 5));
+
+        // When
+        int loaded = new FiscWarmup(clientRepository, fiscService, snapshotProvider, new NotificationClock(), 2, 2, 1).warmUp(false);
+
+        // Then
+        assertEquals(3, loaded);
+        assertEquals(3, fiscService.getMonitoredBalances().size());
+        assertEquals(Money.of("3000.0"), fiscService.getMonitoredBalance("1000000000002").ronBalance());
+        assertNull(fiscService.getMonitoredBalance("9000000000009"));
+        verify(clientRepository, times(2)).findMonitoredAfter(anyString(), any(Limit.class));
+    }
+
+    @Test
+    void shouldDropNotificationsOfChangesMadeBeforeTheWarmup() {
+        long before = (System.currentTimeMillis() - 1000) << 20;
+        when(clientRepository.findMonitoredAfter("", Limit.of(10))).thenReturn(List.of(info("1000000000001", "2000.0")));
+        new FiscWarmup(clientRepository, fiscService, snapshotProvider, new NotificationClock(), 10, 1, 100).warmUp(false);
+
+        fiscService.handleBalanceChangeNotification(notification("1000000000001", "1500.0", before));
+        assertEquals(Money.of("2000.0"), fiscService.getMonitoredBalance("1000000000001").ronBalance());
+
+        fiscService.handleBalanceChangeNotification(notification("1000000000001", "2500.0", (System.currentTimeMillis() + 1) << 20));
+        assertEquals(Money.of("2500.0"), fiscService.getMonitoredBalance("1000000000001").ronBalance());
+    }
+
+    @Test
+    void shouldKeepTheSnapshotOfClientsStillMonitoredAfterACleanShutdown() {
+        // Given a snapshot written on shutdown, and a database in which one snapshot client is no longer
+        // monitored and another one is monitored but missing from the snapshot
+        fiscService.restoreMonitoredBalance("1000000000001", new MonitoredBalance(Money.of("2000.0"), Money.ZERO, 5));
+        fiscService.restoreMonitoredBalance("1000000000003", new MonitoredBalance(Money.of("500.0"), Money.ZERO, 5));
+        when(snapshotProvider.getIfAvailable()).thenReturn(snapshot);
+        when(snapshot.isCleanShutdown()).thenReturn(true);
+        when(clientRepository.findMonitoredAfter("", Limit.of(10)))
+                .thenReturn(List.of(info("1000000000001", "2500.0"), info("1000000000002", "3000.0")));
+        FiscWarmup warmup = new FiscWarmup(clientRepository, fiscService, snapshotProvider, new NotificationClock(), 10, 1, 100);
+
+        // When
+        warmup.start();
+
+        // Then the restored sequence is kept, so queued notifications newer than the snapshot still apply
+        assertTrue(warmup.isRunning());
+        assertEquals(2, fiscService.getMonitoredBalances().size());
+        assertEquals(5, fiscService.getMonitoredBalance("1000000000001").sequence());
+        assertEquals(Money.of("2000.0"), fiscService.getMonitoredBalance("1000000000001").ronBalance());
+        assertEquals(Money.of("3000.0"), fiscService.getMonitoredBalance("1000000000002").ronBalance());
+        assertNull(fiscService.getMonitoredBalance("1000000000003"));
+    }
+
+    @Test
+    void shouldReloadAnOlderSnapshotFromTheDatabaseAfterACrash(@TempDir Path directory) throws Exception {
+        // Given a periodic snapshot, after which a notification was acknowledged and a client started being monitored
+        Path path = directory.resolve("fisc.snapshot");
+        FiscService beforeCrash = new FiscService(new FiscMetrics(new SimpleMeterRegistry()), new BalanceAggregates(10),
+                new NotificationClock());
+        beforeCrash.restoreMonitoredBalance("1000000000001", new MonitoredBalance(Money.of("2000.0"), Money.of("1000.0"), 1));
+        beforeCrash.restoreMonitoredBalance("1000000000003", new MonitoredBalance(Money.of("500.0"), Money.of("1000.0"), 1));
+        new FiscCacheSnapshot(beforeCrash, new FiscMetrics(new SimpleMeterRegistry()), path).write();
+        List<ClientAccountInfo> database = List.of(info("1000000000001", "2500.0"), info("1000000000002", "3000.0"));
+        when(clientRepository.findMonitoredAfter("", Limit.of(10))).thenReturn(database);
+
+        // When FISC restarts after a crash
+        FiscCacheSnapshot restored = new FiscCacheSnapshot(fiscService, new FiscMetrics(new SimpleMeterRegistry()), path);
+        assertEquals(2, restored.restore());
+        when(snapshotProvider.getIfAvailable()).thenReturn(restored);
+        new FiscWarmup(clientRepository, fiscService, snapshotProvider, new NotificationClock(), 10, 1, 100).start();
+
+        // Then the cache matches the database rather than the snapshot
+        assertEquals(database.size(), fiscService.getMonitoredBalances().size());
+        for (ClientAccountInfo info : database) {
+            MonitoredBalance balance = fiscService.getMonitoredBalance(info.cnp());
+            assertEquals(info.ronBalance(), balance.ronBalance());
+            assertEquals(info.euroBalance(), balance.euroBalance());
+        }
+    }
+
+    @Test
+    void shouldWarmUpWhenNoSnapshotWasRestored() {
+        when(snapshotProvider.getIfAvailable()).thenReturn(null);
+        when(clientRepository.findMonitoredAfter("", Limit.of(10))).thenReturn(List.of(info("1000000000001", "2000.0")));
+
+        new FiscWarmup(clientRepository, fiscService, snapshotProvider, new NotificationClock(), 10, 1, 100).start();
+
+        assertEquals(Money.of("2000.0"), fiscService.getMonitoredBalance("1000000000001").ronBalance());
+    }
+
+    private static ClientAccountInfo info(String cnp, String ronBalance) {
+        return new ClientAccountInfo(cnp, Money.of(ronBalance), Money.of("1000.0"), true);
+    }
+
+    private static BalanceChangeNotification notification(String cnp, String ronBalance, long sequence) {
+        BalanceChangeNotification notification = new BalanceChangeNotification();
+        notification.setCnp(cnp);
+        notification.setRonBalance(Money.of(ronBalance));
+        notification.setEuroBalance(Money.of("1000.0"));
+        notification.setRonChanged(true);
+        notification.setSequence(sequence);
+        return notification;
+    }
+}
@@ -0,0 +1,112 @@
+package com.demo.banking;
+
+import com.demo.banking.metrics.BankingMetrics;
+import com.demo.banking.model.IdempotencyRecord;
+import com.demo.banking.repository.IdempotencyRecordRepository;
+import com.demo.banking.service.IdempotencyService;
+import com.demo.banking.service.IdempotencyService.IdempotencyKeyException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyRecordRepository repository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private IdempotencyService idempotency;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        idempotency = new IdempotencyService(repository, transactionManager, new ObjectMapper(),
+                new BankingMetrics(meterRegistry), 100, 60_000);
+    }
+
+    @Test
+    void shouldApplyOnceAndReplayFromMemory() {
+        // Given
+        AtomicInteger applied = new AtomicInteger();
+
+        // When the same request is sent twice with the same key
+        ResponseEntity<?> first = idempotency.execute("key-1", "exchange 1234567890123 RON 100.00",
+                () -> Map.of("applied", applied.incrementAndGet()));
+        ResponseEntity<?> second = idempotency.execute("key-1", "exchange 1234567890123 RON 100.00",
+                () -> Map.of("applied", applied.incrementAndGet()));
+
+        // Then it is applied and recorded once, and the recorded response is replayed without reading the database
+        assertEquals(1, applied.get());
+        assertEquals(200, second.getStatusCode().value());
+        assertEquals(Map.of("applied", 1), first.getBody());
+        assertEquals("{\"applied\":1}", second.getBody());
+        assertEquals("true", second.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        verify(repository).saveAndFlush(any(IdempotencyRecord.class));
+        verify(repository, never()).findById(any());
+        assertEquals(1, meterRegistry.get("banking.idempotency.replayed").tag("source", "memory").counter().count());
+    }
+
+    @Test
+    void shouldReplayFromTheDatabaseWhenTheKeyIsNotInMemory() {
+        // Given a key recorded by another instance, e.g. before a restart
+        when(repository.saveAndFlush(any(IdempotencyRecord.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(repository.findById("key-1")).thenReturn(Optional.of(new IdempotencyRecord("key-1",
+                "deposit 1234567890123 RON 100.00", 200, null, Instant.now())));
+
+        // When
+        ResponseEntity<?> response = idempotency.execute("key-1", "deposit 1234567890123 RON 100.00", () -> null);
+
+        // Then the mutation is rolled back and the recorded response replayed, the next replay comes from memory
+        verify(transactionManager).rollback(any());
+        assertEquals(200, response.getStatusCode().value());
+        assertNull(response.getBody());
+        assertEquals("true", response.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        idempotency.execute("key-1", "deposit 1234567890123 RON 100.00", () -> null);
+        verify(repository).findById("key-1");
+        assertEquals(1, meterRegistry.get("banking.idempotency.replayed").tag("source", "database").counter().count());
+    }
+
+    @Test
+    void shouldRejectKeysReusedForDifferentRequestsAndNotRecordRejections() {
+        // Given
+        idempotency.execute("key-1", "deposit 1234567890123 RON 100.00", () -> null);
+
+        // Then
+        assertThrows(IdempotencyKeyException.class,
+                () -> idempotency.execute("key-1", "deposit 1234567890123 RON 200.00", () -> null));
+        assertThrows(IdempotencyKeyException.class,
+                () -> idempotency.execute("k".repeat(IdempotencyRecord.MAX_KEY_LENGTH + 1), "deposit", () -> null));
+
+        // A rejected request is rolled back and runs again when retried
+        AtomicInteger attempts = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class, () -> idempotency.execute("key-2", "withdraw", () -> {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("Insufficient funds");
+            }));
+        }
+        assertEquals(2, attempts.get());
+        verify(repository, times(1)).saveAndFlush(any(IdempotencyRecord.class));
+    }
+}
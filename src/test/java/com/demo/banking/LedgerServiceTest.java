@@ -0,0 +1,131 @@
+package com.demo.banking;
+
+import com.demo.banking.model.Account;
+import com.demo.banking.model.BalanceSnapshot;
+import com.demo.banking.model.Currency;
+import com.demo.banking.model.LedgerCheckpoint;
+import com.demo.banking.model.LedgerEntry;
+import com.demo.banking.model.LedgerEntryType;
+import com.demo.banking.model.LedgerTail;
+import com.demo.banking.model.Money;
+import com.demo.banking.repository.BalanceSnapshotRepository;
+import com.demo.banking.repository.LedgerCheckpointRepository;
+import com.demo.banking.repository.LedgerEntryRepository;
+import com.demo.banking.service.BalanceAggregates;
+import com.demo.banking.service.LedgerService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class LedgerServiceTest {
+
+    @Mock
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Mock
+    private BalanceSnapshotRepository snapshotRepository;
+
+    @Mock
+    private LedgerCheckpointRepository checkpointRepository;
+
+    private LedgerService ledgerService;
+
+    @BeforeEach
+    void setUp() {
+        ledgerService = new LedgerService(ledgerEntryRepository, snapshotRepository, checkpointRepository,
+                new BalanceAggregates(10), 60_000);
+    }
+
+    @Test
+    void shouldAdvanceAccountSequenceWhenRecording() {
+        // Given
+        Account account = new Account(7L, Currency.RON, Money.of("2500.0"));
+        account.setLedgerSequence(4);
+        ArgumentCaptor<LedgerEntry> entryCaptor = ArgumentCaptor.forClass(LedgerEntry.class);
+
+        // When
+        ledgerService.record("1234567890123", account, LedgerEntryType.DEPOSIT, Money.of("500.0"));
+
+        // Then
+        verify(ledgerEntryRepository).save(entryCaptor.capture());
+        assertEquals(5, account.getLedgerSequence());
+        assertEquals(5, entryCaptor.getValue().getSequence());
+        assertEquals(7L, entryCaptor.getValue().getAccountId());
+        assertEquals(Money.of("2500.0"), entryCaptor.getValue().getBalanceAfter());
+    }
+
+    @Test
+    void shouldFoldLedgerTailsIntoSnapshots() {
+        // Given: entries up to id 40 were folded, account 1 has a snapshot at sequence 3, account 2 has none yet
+        LedgerCheckpoint checkpoint = new LedgerCheckpoint(LedgerCheckpoint.SNAPSHOTS, 40, Instant.EPOCH);
+        when(checkpointRepository.findById(LedgerCheckpoint.SNAPSHOTS)).thenReturn(Optional.of(checkpoint));
+        when(ledgerEntryRepository.findLastIdRecordedBefore(eq(40L), any(Instant.class))).thenReturn(57L);
+        BalanceSnapshot existing = new BalanceSnapshot(1L, 3, Money.of("1000.0"), Instant.EPOCH);
+        when(ledgerEntryRepository.findTailsAfter(40)).thenReturn(List.of(
+                new LedgerTail(1L, 5, Money.of("-250.0")),
+                new LedgerTail(2L, 2, Money.of("3000.0"))
+        ));
+        when(snapshotRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(existing));
+
+        // When
+        int written = ledgerService.takeSnapshots();
+
+        // Then
+        assertEquals(2, written);
+        assertEquals(Money.of("750.0"), existing.getBalance());
+        assertEquals(5, existing.getSequence());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<BalanceSnapshot>> savedCaptor = ArgumentCaptor.forClass(List.class);
+        verify(snapshotRepository).saveAll(savedCaptor.capture());
+        BalanceSnapshot created = savedCaptor.getValue().get(1);
+        assertEquals(2L, created.getAccountId());
+        assertEquals(2, created.getSequence());
+        assertEquals(Money.of("3000.0"), created.getBalance());
+
+        // The next run starts after the last entry recorded more than an interval ago
+        assertEquals(57, checkpoint.getLastEntryId());
+        verify(checkpointRepository).save(checkpoint);
+    }
+
+    @Test
+    void shouldNotAdvanceTheCheckpointPastEntriesThatMayStillCommit() {
+        // Given only entries recorded within the last interval, whose transactions may still be open
+        when(checkpointRepository.findById(LedgerCheckpoint.SNAPSHOTS)).thenReturn(Optional.empty());
+        when(ledgerEntryRepository.findLastIdRecordedBefore(eq(0L), any(Instant.class))).thenReturn(null);
+        when(ledgerEntryRepository.findTailsAfter(0)).thenReturn(List.of(new LedgerTail(1L, 1, Money.of("100.0"))));
+        when(snapshotRepository.findAllById(List.of(1L))).thenReturn(List.of());
+
+        // When
+        assertEquals(1, ledgerService.takeSnapshots());
+
+        // Then they are folded, but read again by the next run
+        verify(checkpointRepository, never()).save(any());
+    }
+
+    @Test
+    void shouldRebuildBalanceFromSnapshotAndTail() {
+        // Given
+        when(snapshotRepository.findById(1L))
+                .thenReturn(Optional.of(new BalanceSnapshot(1L, 3, Money.of("1000.0"), Instant.EPOCH)));
+        when(ledgerEntryRepository.sumAfter(1L, 3)).thenReturn(25000L);
+
+        // When/Then
+        assertEquals(Money.of("1250.0"), ledgerService.rebuildBalance(1L));
+        verify(snapshotRepository, never()).saveAll(anyList());
+    }
+}
@@ -0,0 +1,89 @@
+package com.demo.banking;
+
+import com.demo.banking.loadgen.LoadGenerator;
+import com.demo.banking.loadgen.LocalBroker;
+import com.demo.banking.model.Currency;
+import com.demo.banking.model.Money;
+import com.demo.banking.repository.OutboxMessageRepository;
+import com.demo.banking.service.BankService;
+import com.demo.banking.service.ClientMutationGuard;
+import com.demo.banking.service.NotificationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class LoadGeneratorTest {
+
+    @Test
+    void shouldIssueTheSameRequestsForTheSameSeed() throws Exception {
+        List<String> first = recordRequests(42, 4);
+        List<String> second = recordRequests(42, 4);
+        List<String> otherSeed = recordRequests(43, 4);
+
+        // Then 50 clients went through create, 2 initial deposits, 10 operations, closure and close
+        assertTrue(first.size() >= 50 * 15);
+        assertEquals(first, second);
+        assertNotEquals(first, otherSeed);
+    }
+
+    @Test
+    void shouldRunEveryClientThroughTheLifecycle() throws Exception {
+        List<String> requests = recordRequests(7, 1);
+
+        assertEquals(50, requests.stream().filter(r -> r.startsWith("create")).count());
+        assertEquals(50, requests.stream().filter(r -> r.startsWith("close")).count());
+        assertEquals(requests.stream().filter(r -> r.startsWith("startMonitoring")).count(),
+                requests.stream().filter(r -> r.startsWith("stopMonitoring")).count());
+    }
+
+    /**
+     * @return requests made by a run of 50 clients, sorted so that runs can be compared regardless of scheduling
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> recordRequests(long seed, int concurrency) throws Exception {
+        Queue<String> requests = new ConcurrentLinkedQueue<>();
+        BankService bankService = mock(BankService.class);
+        doAnswer(i -> record(requests, "create " + i.getArgument(0))).when(bankService).createAccounts(anyString());
+        doAnswer(i -> record(requests, "deposit " + i.getArgument(0) + " " + i.getArgument(1) + " " + i.getArgument(2)))
+                .when(bankService).deposit(anyString(), any(Currency.class), any(Money.class));
+        doAnswer(i -> record(requests, "withdraw " + i.getArgument(0) + " " + i.getArgument(1) + " " + i.getArgument(2)))
+                .when(bankService).withdraw(anyString(), any(Currency.class), any(Money.class));
+        doAnswer(i -> record(requests, "info " + i.getArgument(0))).when(bankService).getAccountInfo(anyString());
+        doAnswer(i -> record(requests, "startMonitoring " + i.getArgument(0))).when(bankService).startMonitoring(anyString());
+        doAnswer(i -> record(requests, "stopMonitoring " + i.getArgument(0))).when(bankService).stopMonitoring(anyString());
+        doAnswer(i -> record(requests, "prepare " + i.getArgument(0))).when(bankService).prepareAccountsForClosure(anyString());
+        doAnswer(i -> record(requests, "close " + i.getArgument(0))).when(bankService).closeAccounts(anyString());
+
+        NotificationService notificationService = mock(NotificationService.class);
+        when(notificationService.getMode()).thenReturn(NotificationService.Mode.SYNC);
+
+        LoadGenerator generator = new LoadGenerator(bankService,
+                new ClientMutationGuard(ClientMutationGuard.Mode.STRIPED, 16, 0),
+                notificationService,
+                mock(OutboxMessageRepository.class),
+                (ObjectProvider<LocalBroker>) mock(ObjectProvider.class),
+                mock(ApplicationContext.class),
+                50, concurrency, 10, 0.5, seed, 50, 30, 20, false);
+        generator.run();
+
+        List<String> sorted = new ArrayList<>(requests);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static Object record(Queue<String> requests, String request) {
+        requests.add(request);
+        return null;
+    }
+}
@@ -0,0 +1,45 @@
+package com.demo.banking;
+
+import com.demo.banking.model.Money;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoneyTest {
+
+    @Test
+    void shouldConvertDecimalAmountsToMinorUnits() {
+        assertEquals(123456, Money.of("1234.56").minorUnits());
+        assertEquals(150, Money.of("1.5").minorUnits());
+        assertEquals(Money.of("2000.0"), Money.of("2000.00"));
+        assertEquals(new BigDecimal("-0.05"), Money.ofMinor(-5).toBigDecimal());
+        assertEquals("1000.00", Money.of("1000").toString());
+    }
+
+    @Test
+    void shouldRejectAmountsThatCannotBeRepresented() {
+        assertThrows(IllegalArgumentException.class, () -> Money.of("0.001"));
+        assertThrows(IllegalArgumentException.class, () -> Money.of("1e30"));
+        assertThrows(IllegalArgumentException.class, () -> Money.of((BigDecimal) null));
+    }
+
+    @Test
+    void shouldDetectOverflow() {
+        Money max = Money.ofMinor(Long.MAX_VALUE);
+
+        assertThrows(ArithmeticException.class, () -> max.plus(Money.ofMinor(1)));
+        assertThrows(ArithmeticException.class, () -> Money.ofMinor(Long.MIN_VALUE).minus(Money.ofMinor(1)));
+    }
+
+    @Test
+    void shouldSerializeAsDecimalNumber() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        assertEquals("2500.10", objectMapper.writeValueAsString(Money.of("2500.1")));
+        assertEquals(Money.of("10.50"), objectMapper.readValue("10.5", Money.class));
+        assertEquals(Money.of("10.50"), objectMapper.readValue("\"10.50\"", Money.class));
+    }
+}
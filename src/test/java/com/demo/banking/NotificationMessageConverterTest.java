@@ -0,0 +1,76 @@
+package com.demo.banking;
+
+import com.demo.banking.config.BalanceChangeBinaryConverter;
+import com.demo.banking.config.NotificationMessageConverter;
+import com.demo.banking.config.NotificationMessageConverter.WireFormat;
+import com.demo.banking.model.BalanceChangeNotification;
+import com.demo.banking.model.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NotificationMessageConverterTest {
+
+    private BalanceChangeNotification notification;
+
+    @BeforeEach
+    void setUp() {
+        notification = new BalanceChangeNotification();
+        notification.setCnp("1234567890123");
+        notification.setRonBalance(Money.of("2500.50"));
+        notification.setEuroBalance(Money.of("-0.5"));
+        notification.setRonChanged(true);
+        notification.setEuroChanged(false);
+        notification.setSequence(42L << 20);
+        notification.setSentAt(1_700_000_000_000L);
+    }
+
+    @Test
+    void shouldRoundTripBinaryNotification() {
+        NotificationMessageConverter converter = new NotificationMessageConverter(WireFormat.BINARY);
+
+        Message message = converter.toMessage(notification, new MessageProperties());
+        BalanceChangeNotification decoded = (BalanceChangeNotification) converter.fromMessage(message);
+
+        assertEquals(BalanceChangeBinaryConverter.CONTENT_TYPE, message.getMessageProperties().getContentType());
+        assertEquals(44, message.getBody().length);
+        assertEquals("1234567890123", decoded.getCnp());
+        assertEquals(Money.of("2500.50"), decoded.getRonBalance());
+        assertEquals(Money.of("-0.50"), decoded.getEuroBalance());
+        assertTrue(decoded.isRonChanged());
+        assertFalse(decoded.isEuroChanged());
+        assertEquals(42L << 20, decoded.getSequence());
+        assertEquals(1_700_000_000_000L, decoded.getSentAt());
+    }
+
+    @Test
+    void shouldReadJsonAndBinaryRegardlessOfOutboundFormat() {
+        Message json = new NotificationMessageConverter(WireFormat.JSON).toMessage(notification, new MessageProperties());
+        Message binary = new NotificationMessageConverter(WireFormat.BINARY).toMessage(notification, new MessageProperties());
+        NotificationMessageConverter reader = new NotificationMessageConverter(WireFormat.JSON);
+
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, json.getMessageProperties().getContentType());
+        assertTrue(binary.getBody().length * 3 < json.getBody().length);
+        BalanceChangeNotification fromJson = (BalanceChangeNotification) reader.fromMessage(json);
+        BalanceChangeNotification fromBinary = (BalanceChangeNotification) reader.fromMessage(binary);
+        assertEquals(fromJson.getRonBalance(), fromBinary.getRonBalance());
+        assertEquals(fromJson.getSequence(), fromBinary.getSequence());
+    }
+
+    @Test
+    void shouldFallBackToJsonWhenNotificationDoesNotFitBinaryLayout() {
+        NotificationMessageConverter converter = new NotificationMessageConverter(WireFormat.BINARY);
+        notification.setCnp("ABC123");
+
+        Message message = converter.toMessage(notification, new MessageProperties());
+
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, message.getMessageProperties().getContentType());
+        BalanceChangeNotification decoded = (BalanceChangeNotification) converter.fromMessage(message);
+        assertEquals("ABC123", decoded.getCnp());
+        assertEquals(Money.of("2500.50"), decoded.getRonBalance());
+    }
+}
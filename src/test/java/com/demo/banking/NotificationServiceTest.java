@@ -0,0 +1,186 @@
+package com.demo.banking;
+
+import com.demo.banking.config.NotificationRouting;
+import com.demo.banking.config.RabbitMQConfig;
+import com.demo.banking.metrics.BankingMetrics;
+import com.demo.banking.model.BalanceChangeNotification;
+import com.demo.banking.model.Client;
+import com.demo.banking.model.Money;
+import com.demo.banking.model.OutboxMessage;
+import com.demo.banking.repository.OutboxMessageRepository;
+import com.demo.banking.service.AdmissionControl;
+import com.demo.banking.service.NotificationClock;
+import com.demo.banking.service.NotificationService;
+import com.demo.banking.service.NotificationService.Mode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class NotificationServiceTest {
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    @Mock
+    private OutboxMessageRepository outboxRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private Client testClient;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+
+        testClient = new Client("1234567890123");
+        testClient.getRonAccount().setBalance(Money.of("2000.0"));
+        testClient.getEuroAccount().setBalance(Money.of("1000.0"));
+        testClient.setMonitored(true);
+
+        // Run batch callbacks against the template itself
+        lenient().when(rabbitTemplate.invoke(any())).thenAnswer(invocation -> {
+            RabbitOperations.OperationsCallback<?> callback = invocation.getArgument(0);
+            return callback.doInRabbit(rabbitTemplate);
+        });
+    }
+
+    @Test
+    void shouldSendImmediatelyInSyncMode() {
+        NotificationService notificationService = newService(Mode.SYNC, 10);
+
+        testClient.getRonAccount().setBalance(Money.of("2500.0"));
+        notificationService.notifyBalanceChange(testClient, Money.of("2000.0"), Money.of("1000.0"));
+
+        verify(rabbitTemplate).convertAndSend(eq(RabbitMQConfig.EXCHANGE_NAME), eq(RabbitMQConfig.ROUTING_KEY),
+                any(BalanceChangeNotification.class));
+    }
+
+    @Test
+    void shouldRouteEveryNotificationOfAClientToItsPartition() {
+        NotificationRouting routing = new NotificationRouting(4);
+        NotificationService notificationService = new NotificationService(rabbitTemplate, outboxRepository, routing,
+                new BankingMetrics(meterRegistry), unlimited(), new NotificationClock(), Mode.SYNC, 100, 0, 10, new MockEnvironment());
+
+        testClient.getRonAccount().setBalance(Money.of("2500.0"));
+        notificationService.notifyBalanceChange(testClient, Money.of("2000.0"), Money.of("1000.0"));
+        testClient.getEuroAccount().setBalance(Money.of("900.0"));
+        notificationService.notifyBalanceChange(testClient, Money.of("2500.0"), Money.of("1000.0"));
+
+        String routingKey = NotificationRouting.partitionRoutingKey(routing.partitionOf(testClient.getCnp()));
+        verify(rabbitTemplate, times(2)).convertAndSend(eq(RabbitMQConfig.EXCHANGE_NAME), eq(routingKey),
+                any(BalanceChangeNotification.class));
+        assertEquals(routingKey, routing.routingKey(testClient.getCnp()));
+    }
+
+    @Test
+    void shouldCoalescePendingChangesOfTheSameClient() {
+        NotificationService notificationService = newService(Mode.ASYNC, 10);
+
+        // Given three changes of the same client before the publisher runs
+        testClient.getRonAccount().setBalance(Money.of("2500.0"));
+        notificationService.notifyBalanceChange(testClient, Money.of("2000.0"), Money.of("1000.0"));
+        testClient.getRonAccount().setBalance(Money.of("2600.0"));
+        notificationService.notifyBalanceChange(testClient, Money.of("2500.0"), Money.of("1000.0"));
+        testClient.getEuroAccount().setBalance(Money.of("900.0"));
+        notificationService.notifyBalanceChange(testClient, Money.of("2600.0"), Money.of("1000.0"));
+        verifyNoInteractions(rabbitTemplate);
+
+        // When
+        int sent = notificationService.flush();
+
+        // Then a single notification carries the latest state
+        assertEquals(1, sent);
+        ArgumentCaptor<BalanceChangeNotification> captor = ArgumentCaptor.forClass(BalanceChangeNotification.class);
+        verify(rabbitTemplate).convertAndSend(eq(RabbitMQConfig.EXCHANGE_NAME), eq(RabbitMQConfig.ROUTING_KEY),
+                captor.capture());
+        BalanceChangeNotification notification = captor.getValue();
+        assertEquals(Money.of("2600.0"), notification.getRonBalance());
+        assertEquals(Money.of("900.0"), notification.getEuroBalance());
+        assertTrue(notification.isRonChanged());
+        assertTrue(notification.isEuroChanged());
+        assertEquals(2, meterRegistry.get("banking.notification.coalesced").counter().count());
+    }
+
+    @Test
+    void shouldSendSynchronouslyWhenPendingQueueIsFull() {
+        NotificationService notificationService = newService(Mode.ASYNC, 1);
+
+        Client otherClient = new Client("9876543210987");
+        testClient.getRonAccount().setBalance(Money.of("2500.0"));
+        otherClient.getRonAccount().setBalance(Money.of("100.0"));
+
+        notificationService.notifyBalanceChange(testClient, Money.of("2000.0"), Money.of("1000.0"));
+        notificationService.notifyBalanceChange(otherClient, Money.ZERO, Money.ZERO);
+
+        // The second client did not fit into the queue and was published right away
+        ArgumentCaptor<BalanceChangeNotification> captor = ArgumentCaptor.forClass(BalanceChangeNotification.class);
+        verify(rabbitTemplate).convertAndSend(eq(RabbitMQConfig.EXCHANGE_NAME), eq(RabbitMQConfig.ROUTING_KEY),
+                captor.capture());
+        assertEquals("9876543210987", captor.getValue().getCnp());
+
+        assertEquals(1, notificationService.flush());
+        verify(rabbitTemplate, times(2)).convertAndSend(eq(RabbitMQConfig.EXCHANGE_NAME),
+                eq(RabbitMQConfig.ROUTING_KEY), captor.capture());
+        List<BalanceChangeNotification> sent = captor.getAllValues();
+        assertEquals("1234567890123", sent.get(sent.size() - 1).getCnp());
+    }
+
+    @Test
+    void shouldWriteToOutboxInsteadOfSendingInOutboxMode() {
+        NotificationService notificationService = newService(Mode.OUTBOX, 10);
+
+        testClient.getEuroAccount().setBalance(Money.of("1200.0"));
+        notificationService.notifyBalanceChange(testClient, Money.of("2000.0"), Money.of("1000.0"));
+
+        ArgumentCaptor<OutboxMessage> captor = ArgumentCaptor.forClass(OutboxMessage.class);
+        verify(outboxRepository).save(captor.capture());
+        assertEquals("1234567890123", captor.getValue().getCnp());
+        assertEquals(Money.of("1200.0"), captor.getValue().getEuroBalance());
+        assertFalse(captor.getValue().isRonChanged());
+        assertTrue(captor.getValue().isEuroChanged());
+        verifyNoInteractions(rabbitTemplate);
+    }
+
+    @Test
+    void shouldRejectChangesOfMonitoredClientsWhileTheOutboxBacksUp() {
+        // Given shedding at 20 pending outbox rows, and 20 rows pending
+        AdmissionControl admission = new AdmissionControl(new BankingMetrics(meterRegistry), 0, 0, 0, 0, 0, 20, 0, 0);
+        admission.monitorPublishBacklog(() -> 20);
+        NotificationService notificationService = new NotificationService(rabbitTemplate, outboxRepository,
+                new NotificationRouting(0), new BankingMetrics(meterRegistry), admission, new NotificationClock(),
+                Mode.OUTBOX, 100, 0, 10, new MockEnvironment());
+
+        // When
+        testClient.getRonAccount().setBalance(Money.of("2500.0"));
+
+        // Then the change is rejected before its row is written
+        assertThrows(AdmissionControl.OverloadedException.class,
+                () -> notificationService.notifyBalanceChange(testClient, Money.of("2000.0"), Money.of("1000.0")));
+        verifyNoInteractions(outboxRepository);
+        assertEquals(1, meterRegistry.get("banking.admission.shed").tag("reason", "notification-queue").counter().count());
+    }
+
+    private NotificationService newService(Mode mode, int queueCapacity) {
+        return new NotificationService(rabbitTemplate, outboxRepository, new NotificationRouting(0),
+                new BankingMetrics(meterRegistry), unlimited(), new NotificationClock(),
+                mode, 100, 0, queueCapacity, new MockEnvironment());
+    }
+
+    private AdmissionControl unlimited() {
+        return new AdmissionControl(new BankingMetrics(meterRegistry), 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+}
@@ -0,0 +1,125 @@
+package com.demo.banking;
+
+import com.demo.banking.config.NotificationRouting;
+import com.demo.banking.config.RabbitMQConfig;
+import com.demo.banking.metrics.BankingMetrics;
+import com.demo.banking.model.BalanceChangeNotification;
+import com.demo.banking.model.Money;
+import com.demo.banking.model.OutboxMessage;
+import com.demo.banking.repository.OutboxMessageRepository;
+import com.demo.banking.service.AdmissionControl;
+import com.demo.banking.service.AdmissionControl.OverloadedException;
+import com.demo.banking.service.OutboxRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.ConnectException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class OutboxRelayTest {
+
+    @Mock
+    private OutboxMessageRepository outboxRepository;
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    private AdmissionControl admission;
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    void setUp() {
+        BankingMetrics metrics = new BankingMetrics(new SimpleMeterRegistry());
+        // Only shedding on the backlog, at 20 pending rows
+        admission = new AdmissionControl(metrics, 0, 0, 0, 0, 0, 20, 0, 0);
+        outboxRelay = new OutboxRelay(outboxRepository, rabbitTemplate, new NotificationRouting(0), metrics, admission, 10);
+    }
+
+    @Test
+    void shouldRelayMergedBatchAndDeleteItsRows() {
+        // Given two pending changes of one client and one of another
+        List<OutboxMessage> batch = List.of(
+                message(1L, "1234567890123", "2500.0", "1000.0", true, false),
+                message(2L, "9876543210987", "100.0", "0", true, false),
+                message(3L, "1234567890123", "2500.0", "900.0", false, true));
+        when(outboxRepository.findAllByOrderByIdAsc(any())).thenReturn(batch);
+        when(rabbitTemplate.invoke(any())).thenAnswer(invocation -> {
+            RabbitOperations.OperationsCallback<?> callback = invocation.getArgument(0);
+            return callback.doInRabbit(rabbitTemplate);
+        });
+
+        // When
+        int relayed = outboxRelay.relay();
+
+        // Then
+        assertEquals(3, relayed);
+        ArgumentCaptor<BalanceChangeNotification> captor = ArgumentCaptor.forClass(BalanceChangeNotification.class);
+        verify(rabbitTemplate, times(2)).convertAndSend(eq(RabbitMQConfig.EXCHANGE_NAME),
+                eq(RabbitMQConfig.ROUTING_KEY), captor.capture());
+        BalanceChangeNotification merged = captor.getAllValues().get(0);
+        assertEquals("1234567890123", merged.getCnp());
+        assertEquals(Money.of("900.0"), merged.getEuroBalance());
+        assertTrue(merged.isRonChanged());
+        assertTrue(merged.isEuroChanged());
+        verify(outboxRepository).deleteRelayed(List.of(1L, 2L, 3L));
+    }
+
+    @Test
+    void shouldKeepRowsWhenBrokerIsUnavailable() {
+        when(outboxRepository.findAllByOrderByIdAsc(any()))
+                .thenReturn(List.of(message(1L, "1234567890123", "2500.0", "1000.0", true, false)));
+        when(rabbitTemplate.invoke(any())).thenThrow(new AmqpConnectException(new ConnectException("refused")));
+
+        assertEquals(0, outboxRelay.relay());
+        verify(outboxRepository, never()).deleteRelayed(any());
+    }
+
+    @Test
+    void shouldShedNotificationsWhileTheOutboxBacksUp() {
+        // Given rows piling up while the broker is unavailable
+        when(outboxRepository.findAllByOrderByIdAsc(any()))
+                .thenReturn(List.of(message(1L, "1234567890123", "2500.0", "1000.0", true, false)));
+        when(rabbitTemplate.invoke(any())).thenThrow(new AmqpConnectException(new ConnectException("refused")));
+        when(outboxRepository.count()).thenReturn(25L);
+
+        // When
+        outboxRelay.relay();
+
+        // Then
+        assertEquals(25, outboxRelay.getPending());
+        assertThrows(OverloadedException.class, admission::checkPublishBacklog);
+
+        // And once a run drains the outbox, notifications are accepted again
+        reset(rabbitTemplate);
+        outboxRelay.relay();
+        assertEquals(0, outboxRelay.getPending());
+        admission.checkPublishBacklog();
+    }
+
+    private OutboxMessage message(Long id, String cnp, String ron, String euro, boolean ronChanged, boolean euroChanged) {
+        BalanceChangeNotification notification = new BalanceChangeNotification();
+        notification.setCnp(cnp);
+        notification.setRonBalance(Money.of(ron));
+        notification.setEuroBalance(Money.of(euro));
+        notification.setRonChanged(ronChanged);
+        notification.setEuroChanged(euroChanged);
+        OutboxMessage message = new OutboxMessage(notification);
+        ReflectionTestUtils.setField(message, "id", id);
+        return message;
+    }
+}